@@ -13,7 +13,6 @@
 package com.microfocus.lrc.core
 
 import com.google.gson.JsonObject
-import com.microfocus.lrc.core.entity.ApiTestRunReport
 import com.microfocus.lrc.core.entity.ServerConfiguration
 import com.microfocus.lrc.jenkins.LoggerProxy
 import okhttp3.*
@@ -22,9 +21,9 @@ import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.RequestBody.Companion.toRequestBody
 import java.io.Closeable
 import java.io.IOException
-import java.io.InputStream
 import java.net.UnknownHostException
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
 import javax.net.ssl.SSLException
 
 class ApiClient internal constructor(
@@ -43,7 +42,10 @@ class ApiClient internal constructor(
         }
     }
 
+    @Volatile
     private var tokenAuth: String? = null
+
+    @Volatile
     private var csrfCookieStr: String? = null
     private var okHttpClient: OkHttpClient? = null
 
@@ -68,36 +70,111 @@ class ApiClient internal constructor(
             .addHeader("Content-Type", contentType)
             .addHeader("cache-control", "no-cache")
 
-        if (this.csrfCookieStr != null) {
-            val csrf = "LWSSO_COOKIE_KEY=${this.csrfCookieStr}"
-            reqBuilder.addHeader("Cookie", csrf)
+        return reqBuilder
+    }
+
+    /**
+     * set the current token on the request, replacing the one of an earlier attempt.
+     */
+    private fun authorize(reqBuilder: Request.Builder): Request {
+        val csrfCookie = this.csrfCookieStr
+        if (csrfCookie != null) {
+            reqBuilder.header("Cookie", "LWSSO_COOKIE_KEY=$csrfCookie")
         }
 
-        if (this.tokenAuth != null) {
-            reqBuilder.addHeader("Authorization", "Bearer ${this.tokenAuth}")
+        val token = this.tokenAuth
+        if (token != null) {
+            reqBuilder.header("Authorization", "Bearer $token")
         }
 
-        return reqBuilder
+        return reqBuilder.build()
+    }
+
+    private fun logConnectionError(ex: IOException) {
+        if (ex is UnknownHostException) {
+            this.loggerProxy.error("Unknown host. Check your configuration.")
+        } else if (ex is SSLException) {
+            this.loggerProxy.error("SSL exception occurred. Check if you are behind a proxy or firewall.")
+        }
+    }
+
+    /**
+     * a 401 means the (cached) token was revoked or rotated, login again and retry once.
+     */
+    private fun execute(reqBuilder: Request.Builder, reauthenticate: Boolean = true): Response {
+        val res = this.call(reqBuilder)
+        if (res.code != 401 || !reauthenticate) {
+            return res
+        }
+
+        res.close()
+        this.loggerProxy.debug("Authentication rejected, login again.")
+        this.login()
+
+        return this.call(reqBuilder)
     }
 
-    private fun execute(reqBuilder: Request.Builder): Response {
+    private fun call(reqBuilder: Request.Builder): Response {
         try {
-            return this.getOkhttpClient().newCall(reqBuilder.build()).execute()
+            return this.getOkhttpClient().newCall(this.authorize(reqBuilder)).execute()
         } catch (ex: UnknownHostException) {
-            this.loggerProxy.error("Unknown host. Check your configuration.")
+            this.logConnectionError(ex)
             throw ex
         } catch (ex: SSLException) {
-            this.loggerProxy.error("SSL exception occurred. Check if you are behind a proxy or firewall.")
+            this.logConnectionError(ex)
             throw ex
         }
     }
 
-    fun get(
+    private fun executeAsync(reqBuilder: Request.Builder): CallFuture {
+        val future = CallFuture()
+        this.enqueue(reqBuilder, future, true)
+
+        return future
+    }
+
+    private fun enqueue(reqBuilder: Request.Builder, future: CallFuture, reauthenticate: Boolean) {
+        val call = this.getOkhttpClient().newCall(this.authorize(reqBuilder))
+        future.call = call
+        if (future.isCancelled) {
+            return
+        }
+
+        call.enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                this@ApiClient.logConnectionError(e)
+                future.completeExceptionally(e)
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                if (response.code == 401 && reauthenticate && !future.isDone) {
+                    // like execute(), the login blocks this dispatcher thread only
+                    response.close()
+                    try {
+                        this@ApiClient.loggerProxy.debug("Authentication rejected, login again.")
+                        this@ApiClient.login()
+                    } catch (e: IOException) {
+                        future.completeExceptionally(e)
+                        return
+                    }
+                    this@ApiClient.enqueue(reqBuilder, future, false)
+                    return
+                }
+
+                if (!future.complete(response)) {
+                    response.close()
+                }
+            }
+        })
+    }
+
+    private fun buildGet(
         apiPath: String,
-        queryParams: Map<String, String>? = null,
-        encodedQueryParams: Map<String, String>? = null,
-        contentType: String = Constants.APPLICATION_JSON
-    ): Response {
+        queryParams: Map<String, String>?,
+        encodedQueryParams: Map<String, String>?,
+        contentType: String,
+        headers: Map<String, String>?
+    ): Request.Builder {
         val urlBuilder = this.prepareUrlBuilder(apiPath)
 
         if (!queryParams.isNullOrEmpty()) {
@@ -109,10 +186,12 @@ class ApiClient internal constructor(
         }
 
         val reqBuilder = this.prepareRequestBuilder(urlBuilder.build(), contentType).get()
-        return this.execute(reqBuilder)
+        headers?.forEach { (k, v) -> reqBuilder.header(k, v) }
+
+        return reqBuilder
     }
 
-    fun post(apiPath: String, queryParams: Map<String, String>? = null, payload: JsonObject): Response {
+    private fun buildPost(apiPath: String, queryParams: Map<String, String>?, payload: JsonObject): Request.Builder {
         val urlBuilder = this.prepareUrlBuilder(apiPath)
         if (!queryParams.isNullOrEmpty()) {
             queryParams.forEach { (k, v) -> run { urlBuilder.addQueryParameter(k, v); } }
@@ -120,10 +199,10 @@ class ApiClient internal constructor(
         val reqBuilder = this.prepareRequestBuilder(urlBuilder.build())
         reqBuilder.post(payload.toString().toRequestBody(MEDIA_TYPE_JSON))
 
-        return this.execute(reqBuilder)
+        return reqBuilder
     }
 
-    fun put(apiPath: String, queryParams: Map<String, String>? = null, payload: JsonObject): Response {
+    private fun buildPut(apiPath: String, queryParams: Map<String, String>?, payload: JsonObject): Request.Builder {
         val urlBuilder = this.prepareUrlBuilder(apiPath)
 
         if (!queryParams.isNullOrEmpty()) {
@@ -133,15 +212,68 @@ class ApiClient internal constructor(
         val reqBuilder = this.prepareRequestBuilder(urlBuilder.build())
         reqBuilder.put(payload.toString().toRequestBody(MEDIA_TYPE_JSON))
 
-        return this.execute(reqBuilder)
+        return reqBuilder
     }
 
-    private fun loginOAuth() {
+    fun get(
+        apiPath: String,
+        queryParams: Map<String, String>? = null,
+        encodedQueryParams: Map<String, String>? = null,
+        contentType: String = Constants.APPLICATION_JSON,
+        headers: Map<String, String>? = null
+    ): Response {
+        return this.execute(this.buildGet(apiPath, queryParams, encodedQueryParams, contentType, headers))
+    }
+
+    fun post(apiPath: String, queryParams: Map<String, String>? = null, payload: JsonObject): Response {
+        return this.execute(this.buildPost(apiPath, queryParams, payload))
+    }
+
+    fun put(apiPath: String, queryParams: Map<String, String>? = null, payload: JsonObject): Response {
+        return this.execute(this.buildPut(apiPath, queryParams, payload))
+    }
+
+    /**
+     * non-blocking variant of [get], the future is completed on an OkHttp dispatcher thread.
+     * the caller owns the response and must close it.
+     */
+    fun getAsync(
+        apiPath: String,
+        queryParams: Map<String, String>? = null,
+        encodedQueryParams: Map<String, String>? = null,
+        contentType: String = Constants.APPLICATION_JSON,
+        headers: Map<String, String>? = null
+    ): CallFuture {
+        return this.executeAsync(this.buildGet(apiPath, queryParams, encodedQueryParams, contentType, headers))
+    }
+
+    /**
+     * [getAsync] with the response handed to [parse], which must close it.
+     * cancelling the returned future cancels the call, a response arriving anyway is closed.
+     */
+    fun <T> getAsync(
+        apiPath: String,
+        headers: Map<String, String>?,
+        parse: (Response) -> T
+    ): CompletableFuture<T> {
+        val response = this.getAsync(apiPath, headers = headers)
+        val result = response.thenApply(parse)
+        result.whenComplete { _, ex ->
+            if (ex is CancellationException) {
+                response.cancel(true)
+                response.thenAccept { it.close() }
+            }
+        }
+
+        return result
+    }
+
+    private fun loginOAuth(): AuthTokenCache.AuthToken {
         val payload = JsonObject()
         payload.addProperty("client_id", this.serverConfiguration.username)
         payload.addProperty("client_secret", this.serverConfiguration.password)
 
-        val res = this.post("v1/auth-client", payload = payload)
+        val res = this.execute(this.buildPost("v1/auth-client", null, payload), false)
         res.use {
             if (res.code != 200) {
                 throw IOException("Failed to login ${this.serverConfiguration.url}. Status code: ${res.code}, details: ${res.body?.string()}")
@@ -149,14 +281,14 @@ class ApiClient internal constructor(
             val body = res.body?.string()
             val resObj = Utils.parseJsonString(body, "Failed to parse authentication response data")
             if (resObj.has("token")) {
-                this.tokenAuth = resObj["token"].asString
+                return AuthTokenCache.AuthToken(AuthTokenCache.TokenType.BEARER, resObj["token"].asString)
             } else {
                 throw IOException("Failed to login ${this.serverConfiguration.url}. Invalid response: ${res.body?.string()}")
             }
         }
     }
 
-    fun login() {
+    private fun requestToken(): AuthTokenCache.AuthToken {
         if (isOAuthClientId(this.serverConfiguration.username)) {
             return this.loginOAuth()
         }
@@ -165,7 +297,7 @@ class ApiClient internal constructor(
         payload.addProperty("user", this.serverConfiguration.username)
         payload.addProperty("password", this.serverConfiguration.password)
 
-        val res = this.post("v1/auth", payload = payload)
+        val res = this.execute(this.buildPost("v1/auth", null, payload), false)
         res.use {
             if (res.code != 200) {
                 throw IOException("Failed to login ${this.serverConfiguration.url}. Status code: ${res.code}, details: ${res.body?.string()}")
@@ -173,13 +305,37 @@ class ApiClient internal constructor(
 
             val resObj = Utils.parseJsonString(res.body?.string(), "Failed to parse authentication response data")
             if (resObj.has("token")) {
-                this.csrfCookieStr = resObj["token"].asString
+                return AuthTokenCache.AuthToken(AuthTokenCache.TokenType.LWSSO_COOKIE, resObj["token"].asString)
             } else {
                 throw IOException("Failed to login ${this.serverConfiguration.url}. Invalid response: ${res.body?.string()}")
             }
         }
     }
 
+    private fun applyToken(token: AuthTokenCache.AuthToken) {
+        when (token.type) {
+            AuthTokenCache.TokenType.BEARER -> this.tokenAuth = token.value
+            AuthTokenCache.TokenType.LWSSO_COOKIE -> this.csrfCookieStr = token.value
+        }
+    }
+
+    /**
+     * always login against the server, the new token replaces the cached one.
+     */
+    fun login() {
+        this.applyToken(AuthTokenCache.refresh(this.serverConfiguration) { this.requestToken() })
+    }
+
+    /**
+     * reuse a cached token (or share a login in progress) and validate the tenant only once.
+     */
+    fun authenticate() {
+        this.applyToken(AuthTokenCache.getOrLogin(this.serverConfiguration) { this.requestToken() })
+        if (!AuthTokenCache.isTenantValidated(this.serverConfiguration)) {
+            this.validateTenant()
+        }
+    }
+
     fun validateTenant() {
         val res = this.get("v1/projects")
         res.use {
@@ -191,62 +347,21 @@ class ApiClient internal constructor(
                 throw IOException("Failed to retrieve projects from tenant")
             }
         }
-    }
-
-    fun getReport(reportId: Int): InputStream? {
-        val apiPath = ApiTestRunReport(
-            mapOf(
-                "reportId" to "$reportId",
-            )
-        ).path
-
-        val res = this.get(apiPath)
-        if (res.code != 200) {
-            this.loggerProxy.info("Report #$reportId is not ready: ${res.code}, ${res.body?.string()}")
-            res.close()
-            return null
-        }
-
-        val contentType = res.header("content-type", null)
-        if (contentType?.contains("application/octet-stream") == true) {
-            return res.body?.byteStream()
-        } else {
-            this.loggerProxy.info("Unknown content type: $contentType")
-            res.close()
-            return null
-        }
+        AuthTokenCache.markTenantValidated(this.serverConfiguration)
     }
 
     fun getServerConfiguration(): ServerConfiguration {
         return this.serverConfiguration
     }
 
+    @Synchronized
     private fun getOkhttpClient(): OkHttpClient {
         var c = this.okHttpClient
-        if (c != null) {
-            return c
+        if (c == null) {
+            c = HttpClientRegistry.acquire(this.serverConfiguration)
+            this.okHttpClient = c
         }
 
-        val builder = OkHttpClient.Builder()
-        val proxyConfiguration = this.serverConfiguration.proxyConfiguration
-        if (this.serverConfiguration.proxyConfiguration != null) {
-            builder.proxy(proxyConfiguration.proxy)
-            if (proxyConfiguration.username != null && proxyConfiguration.password != null) {
-                val auth = Authenticator { _, response ->
-                    val cred: String = Credentials.basic(proxyConfiguration.username, proxyConfiguration.password)
-                    response.request.newBuilder().header("Proxy-Authorization", cred).build()
-                }
-
-                builder.proxyAuthenticator(auth)
-            }
-        }
-
-        c = builder
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .build()
-        this.okHttpClient = c
-
         return c
     }
 
@@ -254,16 +369,32 @@ class ApiClient internal constructor(
         return urlStr.toHttpUrlOrNull() ?: throw Exception("Invalid URL: $urlStr")
     }
 
+    @Synchronized
     override fun close() {
-        val c = this.okHttpClient
-        if (c != null) {
-            c.dispatcher.executorService.shutdown()
-            c.connectionPool.evictAll()
+        // the underlying client is shared through HttpClientRegistry, only give it back here
+        if (this.okHttpClient != null) {
             this.okHttpClient = null
+            HttpClientRegistry.release(this.serverConfiguration)
         }
     }
 }
 
+/**
+ * the response of an enqueued call. cancelling it cancels the call, also once the response arrived,
+ * which aborts reading its body.
+ */
+class CallFuture : CompletableFuture<Response>() {
+    @Volatile
+    internal var call: Call? = null
+
+    override fun cancel(mayInterruptIfRunning: Boolean): Boolean {
+        val cancelled = super.cancel(mayInterruptIfRunning)
+        this.call?.cancel()
+
+        return cancelled
+    }
+}
+
 class ApiClientFactory {
     companion object {
         @JvmStatic
@@ -272,8 +403,7 @@ class ApiClientFactory {
             loggerProxy: LoggerProxy = LoggerProxy()
         ): ApiClient {
             val client = ApiClient(serverConfiguration, loggerProxy)
-            client.login()
-            client.validateTenant()
+            client.authenticate()
 
             return client
         }
@@ -0,0 +1,182 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.google.gson.JsonParser
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.util.Base64
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+
+/**
+ * JVM-wide cache of authentication tokens, keyed by server url, tenant, client id and a digest of the secret.
+ *
+ * Concurrent callers asking for the same credentials share one in-flight login,
+ * and a tenant is only validated once per token, the validation expires with the token.
+ */
+class AuthTokenCache {
+    enum class TokenType {
+        LWSSO_COOKIE,
+        BEARER
+    }
+
+    class AuthToken(
+        val type: TokenType,
+        val value: String,
+        val expiresAt: Long = expiryOf(value)
+    ) {
+        fun isExpired(): Boolean {
+            return System.currentTimeMillis() >= this.expiresAt
+        }
+    }
+
+    private data class CacheKey(
+        val url: String,
+        val tenantId: String?,
+        val username: String?,
+        val passwordDigest: String,
+    )
+
+    companion object {
+        private val tokens = ConcurrentHashMap<CacheKey, AuthToken>()
+        private val inFlight = ConcurrentHashMap<CacheKey, CompletableFuture<AuthToken>>()
+
+        // the token the tenant was validated with
+        private val validatedTenants = ConcurrentHashMap<CacheKey, AuthToken>()
+
+        /**
+         * the expiry of a JWT token ("exp" claim) minus [Constants.AUTH_TOKEN_EXPIRY_MARGIN],
+         * [Constants.AUTH_TOKEN_TTL] from now for opaque tokens.
+         */
+        @JvmStatic
+        fun expiryOf(token: String): Long {
+            val fallback = System.currentTimeMillis() + Constants.AUTH_TOKEN_TTL
+            val parts = token.split(".")
+            if (parts.size != 3) {
+                return fallback
+            }
+
+            return try {
+                val claims = String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                val exp = JsonParser.parseString(claims).asJsonObject.get("exp")?.asLong ?: return fallback
+                exp * 1000 - Constants.AUTH_TOKEN_EXPIRY_MARGIN
+            } catch (e: RuntimeException) {
+                fallback
+            }
+        }
+
+        /**
+         * return the cached token if it is still valid, otherwise login (shared with concurrent callers).
+         */
+        @JvmStatic
+        fun getOrLogin(serverConfiguration: ServerConfiguration, login: () -> AuthToken): AuthToken {
+            val key = keyOf(serverConfiguration)
+            val cached = tokens[key]
+            if (cached != null && !cached.isExpired()) {
+                return cached
+            }
+
+            return loginOnce(key, login)
+        }
+
+        /**
+         * drop the cached token and login again, e.g. after the server answered 401.
+         */
+        @JvmStatic
+        fun refresh(serverConfiguration: ServerConfiguration, login: () -> AuthToken): AuthToken {
+            val key = keyOf(serverConfiguration)
+            tokens.remove(key)
+
+            return loginOnce(key, login)
+        }
+
+        @JvmStatic
+        fun isTenantValidated(serverConfiguration: ServerConfiguration): Boolean {
+            val key = keyOf(serverConfiguration)
+            val validatedWith = validatedTenants[key] ?: return false
+            if (validatedWith.isExpired() || validatedWith !== tokens[key]) {
+                validatedTenants.remove(key, validatedWith)
+                return false
+            }
+
+            return true
+        }
+
+        @JvmStatic
+        fun markTenantValidated(serverConfiguration: ServerConfiguration) {
+            val key = keyOf(serverConfiguration)
+            val token = tokens[key] ?: return
+            validatedTenants[key] = token
+        }
+
+        @JvmStatic
+        fun invalidate(serverConfiguration: ServerConfiguration) {
+            val key = keyOf(serverConfiguration)
+            tokens.remove(key)
+            validatedTenants.remove(key)
+        }
+
+        @JvmStatic
+        fun clear() {
+            tokens.clear()
+            validatedTenants.clear()
+        }
+
+        private fun loginOnce(key: CacheKey, login: () -> AuthToken): AuthToken {
+            val future = CompletableFuture<AuthToken>()
+            val existing = inFlight.putIfAbsent(key, future)
+            if (existing != null) {
+                return await(existing)
+            }
+
+            try {
+                val token = login()
+                tokens[key] = token
+                future.complete(token)
+
+                return token
+            } catch (e: Exception) {
+                tokens.remove(key)
+                validatedTenants.remove(key)
+                future.completeExceptionally(e)
+                throw e
+            } finally {
+                inFlight.remove(key, future)
+            }
+        }
+
+        private fun await(future: CompletableFuture<AuthToken>): AuthToken {
+            try {
+                return future.get()
+            } catch (e: ExecutionException) {
+                val cause = e.cause
+                if (cause is IOException) {
+                    throw cause
+                }
+                throw IOException(cause?.message, cause)
+            }
+        }
+
+        private fun keyOf(serverConfiguration: ServerConfiguration): CacheKey {
+            return CacheKey(
+                serverConfiguration.url,
+                serverConfiguration.tenantId,
+                serverConfiguration.username,
+                Utils.sha256Hex(serverConfiguration.password)
+            )
+        }
+    }
+}
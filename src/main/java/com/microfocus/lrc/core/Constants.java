@@ -28,10 +28,39 @@ public final class Constants {
     public static final long REPORT_DOWNLOAD_POLLING_INTERVAL = 5000;
     public static final long REPORT_READY_MAX_RETRY = 24;
     public static final long PDF_REPORT_READY_MAX_RETRY = 48;
+    public static final int REPORT_DOWNLOAD_MAX_ATTEMPTS = 5;
+    public static final int REPORT_DOWNLOAD_THREADS = 4;
+    public static final long SLA_LOOKUP_TIMEOUT = 60000;
 
     public static final long TEST_RUN_END_POLLING_INTERVAL = 10000;
     public static final long TEST_RUN_END_LOGIN_MAXRETRY = 3;
     public static final long TEST_RUN_END_MAXRETRY = 5;
+    public static final long TEST_RUN_POLLING_FAST_INTERVAL = 3000;
+    public static final long TEST_RUN_POLLING_MAX_INTERVAL = 60000;
+    public static final long TEST_RUN_POLLING_ERROR_INTERVAL = 2000;
+    public static final long TEST_RUN_POLLING_TEST_MODE_INTERVAL = 100;
+    public static final int RUN_MONITOR_THREADS = 4;
+    public static final int ASYNC_STEP_THREADS = 4;
+    public static final long RUN_STATE_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    public static final int HTTP_MAX_IDLE_CONNECTIONS = 5;
+    public static final long HTTP_KEEP_ALIVE_DURATION = 5 * 60 * 1000L;
+    public static final long HTTP_CLIENT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+    public static final int HTTP_MAX_REQUESTS = 64;
+    public static final int HTTP_MAX_REQUESTS_PER_HOST = 16;
+    public static final long HTTP_CONNECT_TIMEOUT = 60;
+    public static final long HTTP_READ_TIMEOUT = 60;
+
+    public static final long AUTH_TOKEN_TTL = 15 * 60 * 1000L;
+    public static final long AUTH_TOKEN_EXPIRY_MARGIN = 60 * 1000L;
+    public static final long RUN_SESSION_IDLE_TIMEOUT = 30 * 60 * 1000L;
+
+    public static final long HTTP_LOG_BODY_LIMIT = 4096;
+
+    public static final long LOAD_TEST_CACHE_TTL = 10 * 60 * 1000L;
+    public static final int LOAD_TEST_CACHE_MAX_ENTRIES = 256;
+
+    public static final long TRENDING_REPORT_CACHE_MAX_BYTES = 4 * 1024 * 1024L;
 
     private Constants() {
         throw new IllegalStateException("Utility class");
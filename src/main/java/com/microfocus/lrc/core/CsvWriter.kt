@@ -0,0 +1,77 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import java.io.Closeable
+import java.io.OutputStream
+import java.io.Writer
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Streaming RFC 4180 CSV writer, rows are written one by one to the underlying stream.
+ *
+ * Fields containing a comma, a double quote or a line break are quoted, quotes are doubled.
+ * Closing the writer closes (and finishes the gzip stream of) the underlying stream.
+ */
+class CsvWriter<T>(
+    out: OutputStream,
+    private val columns: List<Column<T>>,
+    gzip: Boolean = false
+) : Closeable {
+    class Column<T>(val header: String, val value: (T) -> Any?)
+
+    private val writer: Writer = (if (gzip) GZIPOutputStream(out) else out).bufferedWriter(Charsets.UTF_8)
+
+    companion object {
+        private const val LINE_END = "\r\n"
+
+        @JvmStatic
+        fun escape(field: String): String {
+            if (field.none { it == ',' || it == '"' || it == '\r' || it == '\n' }) {
+                return field
+            }
+
+            return "\"" + field.replace("\"", "\"\"") + "\""
+        }
+    }
+
+    fun writeHeader() {
+        this.writeFields(this.columns.map { it.header })
+    }
+
+    fun writeRow(item: T) {
+        this.writeFields(this.columns.map { it.value(item)?.toString() ?: "" })
+    }
+
+    fun writeRows(items: Iterable<T>) {
+        items.forEach { this.writeRow(it) }
+    }
+
+    private fun writeFields(fields: List<String>) {
+        fields.forEachIndexed { i, field ->
+            if (i > 0) {
+                this.writer.write(",")
+            }
+            this.writer.write(escape(field))
+        }
+        this.writer.write(LINE_END)
+    }
+
+    fun flush() {
+        this.writer.flush()
+    }
+
+    override fun close() {
+        this.writer.close()
+    }
+}
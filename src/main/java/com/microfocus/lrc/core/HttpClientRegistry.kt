@@ -0,0 +1,175 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import okhttp3.Authenticator
+import okhttp3.ConnectionPool
+import okhttp3.Credentials
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Plugin-wide registry of OkHttp clients, one per LRC server (url, tenant and proxy).
+ *
+ * All clients share one dispatcher, each server gets its own bounded connection pool,
+ * so concurrent builds against the same tenant reuse connections and TLS sessions.
+ * Each [acquire] must be paired with a [release], a client is evicted only once it has no holders left
+ * and was not used for [Constants.HTTP_CLIENT_IDLE_TIMEOUT], so a long run keeps its client while polling.
+ */
+class HttpClientRegistry {
+    private data class ClientKey(
+        val url: String,
+        val tenantId: String?,
+        val proxyHost: String?,
+        val proxyPort: Int,
+        val proxyUsername: String?,
+        val proxyPasswordDigest: String,
+    )
+
+    // mutated only inside compute, under the lock of the map bin
+    private class Entry(val client: OkHttpClient) {
+        var holders = 0
+        var lastAccess: Long = System.currentTimeMillis()
+    }
+
+    companion object {
+        private val entries = ConcurrentHashMap<ClientKey, Entry>()
+
+        @Volatile
+        private var sharedDispatcher: Dispatcher? = null
+
+        /**
+         * the client of the server, held until [release].
+         */
+        @JvmStatic
+        fun acquire(serverConfiguration: ServerConfiguration): OkHttpClient {
+            evictIdle()
+
+            val entry = entries.compute(keyOf(serverConfiguration)) { _, current ->
+                val entry = current ?: Entry(build(serverConfiguration))
+                entry.holders++
+                entry.lastAccess = System.currentTimeMillis()
+                entry
+            }
+
+            return entry!!.client
+        }
+
+        @JvmStatic
+        fun release(serverConfiguration: ServerConfiguration) {
+            entries.computeIfPresent(keyOf(serverConfiguration)) { _, entry ->
+                entry.holders = (entry.holders - 1).coerceAtLeast(0)
+                entry.lastAccess = System.currentTimeMillis()
+                entry
+            }
+
+            evictIdle()
+        }
+
+        /**
+         * evict the clients without holders, not used since [Constants.HTTP_CLIENT_IDLE_TIMEOUT] before [now].
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun evictIdle(now: Long = System.currentTimeMillis()) {
+            val deadline = now - Constants.HTTP_CLIENT_IDLE_TIMEOUT
+            val evicted = ArrayList<OkHttpClient>()
+            for (key in entries.keys) {
+                entries.computeIfPresent(key) { _, entry ->
+                    if (entry.holders == 0 && entry.lastAccess < deadline) {
+                        evicted.add(entry.client)
+                        null
+                    } else {
+                        entry
+                    }
+                }
+            }
+
+            evicted.forEach { it.connectionPool.evictAll() }
+        }
+
+        @JvmStatic
+        @Synchronized
+        fun shutdown() {
+            entries.values.forEach { it.client.connectionPool.evictAll() }
+            entries.clear()
+
+            sharedDispatcher?.let { it.executorService.shutdown() }
+            sharedDispatcher = null
+        }
+
+        @Synchronized
+        private fun dispatcher(): Dispatcher {
+            var d = sharedDispatcher
+            if (d == null) {
+                d = Dispatcher()
+                d.maxRequests = Constants.HTTP_MAX_REQUESTS
+                d.maxRequestsPerHost = Constants.HTTP_MAX_REQUESTS_PER_HOST
+                sharedDispatcher = d
+            }
+
+            return d
+        }
+
+        private fun keyOf(serverConfiguration: ServerConfiguration): ClientKey {
+            val proxyConfiguration = serverConfiguration.proxyConfiguration
+            val proxyPasswordDigest = if (proxyConfiguration?.username != null) {
+                Utils.sha256Hex(proxyConfiguration.password)
+            } else {
+                ""
+            }
+
+            return ClientKey(
+                serverConfiguration.url,
+                serverConfiguration.tenantId,
+                proxyConfiguration?.host,
+                proxyConfiguration?.port ?: -1,
+                proxyConfiguration?.username,
+                proxyPasswordDigest
+            )
+        }
+
+        private fun build(serverConfiguration: ServerConfiguration): OkHttpClient {
+            val builder = OkHttpClient.Builder()
+                .dispatcher(dispatcher())
+                .connectionPool(
+                    ConnectionPool(
+                        Constants.HTTP_MAX_IDLE_CONNECTIONS,
+                        Constants.HTTP_KEEP_ALIVE_DURATION,
+                        TimeUnit.MILLISECONDS
+                    )
+                )
+
+            val proxyConfiguration = serverConfiguration.proxyConfiguration
+            if (proxyConfiguration != null) {
+                builder.proxy(proxyConfiguration.proxy)
+                if (proxyConfiguration.username != null && proxyConfiguration.password != null) {
+                    val auth = Authenticator { _, response ->
+                        val cred: String = Credentials.basic(proxyConfiguration.username, proxyConfiguration.password)
+                        response.request.newBuilder().header("Proxy-Authorization", cred).build()
+                    }
+
+                    builder.proxyAuthenticator(auth)
+                }
+            }
+
+            return builder
+                .connectTimeout(Constants.HTTP_CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(Constants.HTTP_READ_TIMEOUT, TimeUnit.SECONDS)
+                .build()
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.google.gson.Gson
+import com.google.gson.JsonSyntaxException
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.MalformedJsonException
+import okhttp3.Response
+import java.io.EOFException
+import java.io.IOException
+
+/**
+ * Streaming JSON decoding of API responses.
+ *
+ * Payloads are read token by token from the response body's char stream with one shared [Gson],
+ * so the body is never materialized as a String.
+ * Values are bound like `Gson().fromJson(String, ...)` did before, only the way the body is read changed.
+ */
+class JsonDecoder {
+    companion object {
+        @JvmStatic
+        val gson: Gson = Gson()
+
+        /**
+         * malformed payloads are thrown as [JsonSyntaxException],
+         * failures to read the body (e.g. a reset connection) are thrown as they are.
+         */
+        private fun <R> decoding(block: () -> R): R {
+            try {
+                return block()
+            } catch (e: MalformedJsonException) {
+                throw JsonSyntaxException(e)
+            } catch (e: EOFException) {
+                // empty or truncated document
+                throw JsonSyntaxException(e)
+            } catch (e: IllegalStateException) {
+                throw JsonSyntaxException(e)
+            } catch (e: NumberFormatException) {
+                // e.g. an empty string for a metric
+                throw JsonSyntaxException(e)
+            } catch (e: JsonSyntaxException) {
+                // Gson wraps any IOException of the reader
+                val cause = e.cause
+                if (cause is IOException && cause !is MalformedJsonException && cause !is EOFException) {
+                    throw cause
+                }
+                throw e
+            }
+        }
+
+        /**
+         * decode a single JSON object from the response body.
+         */
+        @JvmStatic
+        @kotlin.jvm.Throws(IOException::class)
+        fun <T> decode(res: Response, clazz: Class<T>): T? {
+            val body = res.body ?: return null
+            return decoding {
+                JsonReader(body.charStream()).use { reader ->
+                    if (reader.peek() == JsonToken.NULL) {
+                        null
+                    } else {
+                        gson.fromJson<T>(reader, clazz)
+                    }
+                }
+            }
+        }
+
+        /**
+         * decode a JSON array from the response body, element by element.
+         */
+        @JvmStatic
+        @kotlin.jvm.Throws(IOException::class)
+        fun <T> decodeArray(res: Response, clazz: Class<T>): List<T> {
+            val result = ArrayList<T>()
+            val body = res.body ?: return result
+            val adapter = gson.getAdapter(clazz)
+            decoding {
+                JsonReader(body.charStream()).use { reader ->
+                    if (reader.peek() != JsonToken.NULL) {
+                        reader.beginArray()
+                        while (reader.hasNext()) {
+                            result.add(adapter.read(reader))
+                        }
+                        reader.endArray()
+                    }
+                }
+            }
+
+            return result
+        }
+
+        /**
+         * at most [Constants.HTTP_LOG_BODY_LIMIT] bytes of the body for logging, without consuming it.
+         */
+        @JvmStatic
+        fun peekForLog(res: Response): String {
+            val peeked = res.peekBody(Constants.HTTP_LOG_BODY_LIMIT).string()
+            val contentLength = res.body?.contentLength() ?: -1
+            if (contentLength > Constants.HTTP_LOG_BODY_LIMIT ||
+                (contentLength < 0 && peeked.length.toLong() >= Constants.HTTP_LOG_BODY_LIMIT)
+            ) {
+                return "$peeked... (truncated)"
+            }
+
+            return peeked
+        }
+    }
+}
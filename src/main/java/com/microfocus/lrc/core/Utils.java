@@ -29,6 +29,9 @@ import javax.xml.transform.TransformerFactoryConfigurationError;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 public final class Utils {
@@ -109,6 +112,27 @@ public final class Utils {
         return new String(chars);
     }
 
+    /**
+     * hex SHA-256 digest of a secret, to key caches by it without keeping it in clear.
+     */
+    public static String sha256Hex(final String value) {
+        if (value == null) {
+            return "";
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static void logException(final LoggerProxy logger, final String msg, final Exception ex) {
         if (ex.getMessage() != null) {
             logger.error(msg + ex.getMessage());
@@ -14,129 +14,158 @@ package com.microfocus.lrc.core
 
 import com.microfocus.lrc.core.entity.LoadTestRun
 import com.microfocus.lrc.core.entity.TestRunStatus
-import org.w3c.dom.Document
-import org.w3c.dom.Element
-import java.io.StringWriter
-import java.nio.charset.StandardCharsets
-import javax.xml.transform.OutputKeys
-import javax.xml.transform.dom.DOMSource
-import javax.xml.transform.stream.StreamResult
+import com.microfocus.lrc.core.entity.TestRunTransactionsResponse
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import javax.xml.stream.XMLOutputFactory
+import javax.xml.stream.XMLStreamException
+import javax.xml.stream.XMLStreamWriter
 
+/**
+ * JUnit XML report of a run, written with StAX straight to the output stream.
+ *
+ * Besides the test case of the run itself, there is one test case per transaction,
+ * failed when the transaction breached its SLA, so the JUnit trend can drill down per transaction.
+ */
 class XmlReport {
     companion object {
-        @Throws(Exception::class)
+        private const val CLASS_NAME = "com.microfocus.lrc.Test"
+        private const val INDENT = "  "
+
+        private val outputFactory: XMLOutputFactory = XMLOutputFactory.newInstance()
+
+        @JvmStatic
+        @Throws(XMLStreamException::class)
         fun write(
             testRun: LoadTestRun,
             reportUrl: String,
             dashboardUrl: String,
             slaInfo: String?,
         ): ByteArray {
-            val xml = Utils.newXmlDocument()
-            val isFailure: Boolean = TestRunStatus.PASSED.statusName != testRun.detailedStatus
+            val out = ByteArrayOutputStream()
+            write(testRun, reportUrl, dashboardUrl, slaInfo, out)
 
-            val testsuite = xml.createElement("testsuite")
-            testsuite.setAttribute("name", testRun.loadTest.name)
-            testsuite.setAttribute("tests", "1")
-            testsuite.setAttribute("failures", if (isFailure) "1" else "0")
-            xml.appendChild(testsuite)
-
-            val properties = xml.createElement("properties")
-
-            val pStormRunnerLoad: Element = generatePropertyElement(
-                "generator",
-                "LoadRunner Cloud",
-                xml,
-                false
-            )
-            properties.appendChild(pStormRunnerLoad)
-            val pTestId: Element = generatePropertyElement(
-                "testId",
-                testRun.loadTest.id.toString(),
-                xml,
-                false
-            )
-            properties.appendChild(pTestId)
-            val pRunId: Element = generatePropertyElement(
-                "runId",
-                testRun.id.toString(),
-                xml,
-                false
-            )
-            properties.appendChild(pRunId)
-            val pStatusDesc: Element = generatePropertyElement(
-                "statusDescription",
-                testRun.status,
-                xml,
-                true
-            )
-            properties.appendChild(pStatusDesc)
-            if (testRun.testRunCompletelyEnded()) {
-                val pReport: Element = generatePropertyElement(
-                    "reportUrl",
-                    reportUrl,
-                    xml,
-                    false
-                )
-                val pDashBoard: Element = generatePropertyElement(
-                    "dashboardUrl",
-                    dashboardUrl,
-                    xml,
-                    false
-                )
-                properties.appendChild(pReport)
-                properties.appendChild(pDashBoard)
-            }
-            testsuite.appendChild(properties)
+            return out.toByteArray()
+        }
+
+        @JvmStatic
+        @Throws(XMLStreamException::class)
+        fun write(
+            testRun: LoadTestRun,
+            reportUrl: String,
+            dashboardUrl: String,
+            slaInfo: String?,
+            out: OutputStream,
+        ) {
+            val isFailure: Boolean = TestRunStatus.PASSED.statusName != testRun.detailedStatus
+            val transactions = testRun.transactions
+            val failedTransactions = transactions.count { isSlaBreached(it) }
 
             var time = 0.0
             if (testRun.startTime != -1L && testRun.endTime != -1L && testRun.endTime > testRun.startTime) {
                 time = (testRun.endTime - testRun.startTime) / 1000.0
             }
-            val testcase = xml.createElement("testcase")
-            testcase.setAttribute("name", testRun.loadTest.name)
-            testcase.setAttribute("status", testRun.detailedStatus)
-            testcase.setAttribute("classname", "com.microfocus.lrc.Test")
-            testcase.setAttribute("time", String.format("%.2f", time))
-            testsuite.appendChild(testcase)
 
-            if (isFailure) {
-                val failureEle = xml.createElement("failure")
-                failureEle.setAttribute("message", "Test run status is ${testRun.detailedStatus}")
-                failureEle.setAttribute("type", testRun.detailedStatus)
+            val xml = outputFactory.createXMLStreamWriter(out, "UTF-8")
+            xml.writeStartDocument("UTF-8", "1.0")
+            xml.writeStartElement("testsuite")
+            xml.writeAttribute("name", testRun.loadTest.name)
+            xml.writeAttribute("tests", (1 + transactions.size).toString())
+            xml.writeAttribute("failures", ((if (isFailure) 1 else 0) + failedTransactions).toString())
+            xml.writeAttribute("time", String.format("%.2f", time))
+
+            newLine(xml, 1)
+            xml.writeStartElement("properties")
+            writeProperty(xml, "generator", "LoadRunner Cloud", false)
+            writeProperty(xml, "testId", testRun.loadTest.id.toString(), false)
+            writeProperty(xml, "runId", testRun.id.toString(), false)
+            writeProperty(xml, "statusDescription", testRun.status, true)
+            if (testRun.testRunCompletelyEnded()) {
+                writeProperty(xml, "reportUrl", reportUrl, false)
+                writeProperty(xml, "dashboardUrl", dashboardUrl, false)
+            }
+            newLine(xml, 1)
+            xml.writeEndElement()
 
+            newLine(xml, 1)
+            xml.writeStartElement("testcase")
+            xml.writeAttribute("name", testRun.loadTest.name)
+            xml.writeAttribute("status", testRun.detailedStatus)
+            xml.writeAttribute("classname", CLASS_NAME)
+            xml.writeAttribute("time", String.format("%.2f", time))
+            if (isFailure) {
+                newLine(xml, 2)
+                xml.writeStartElement("failure")
+                xml.writeAttribute("message", "Test run status is ${testRun.detailedStatus}")
+                xml.writeAttribute("type", testRun.detailedStatus)
                 if (!Utils.isEmpty(slaInfo)) {
-                    failureEle.textContent = slaInfo
+                    xml.writeCharacters(slaInfo)
                 }
-
-                testcase.appendChild(failureEle)
+                xml.writeEndElement()
+                newLine(xml, 1)
             }
+            xml.writeEndElement()
 
-            val trans2Str = Utils.newXmlTransformer()
+            transactions.forEach { writeTransaction(xml, it) }
 
-            trans2Str.setOutputProperty(OutputKeys.ENCODING, "UTF-8")
-            trans2Str.setOutputProperty(OutputKeys.INDENT, "yes")
+            newLine(xml, 0)
+            xml.writeEndElement()
+            xml.writeEndDocument()
+            xml.flush()
+            xml.close()
+        }
 
-            val sw = StringWriter()
-            val source = DOMSource(xml)
-            trans2Str.transform(source, StreamResult(sw))
+        private fun isSlaBreached(tx: TestRunTransactionsResponse): Boolean {
+            return tx.slaStatus.equals("Failed", ignoreCase = true)
+        }
+
+        private fun writeTransaction(xml: XMLStreamWriter, tx: TestRunTransactionsResponse) {
+            newLine(xml, 1)
+            xml.writeStartElement("testcase")
+            xml.writeAttribute("name", tx.name)
+            // the script is the class, dots would be taken as package separators
+            xml.writeAttribute("classname", "$CLASS_NAME.${tx.scriptName.replace('.', '_')}")
+            xml.writeAttribute("status", tx.slaStatus)
+            xml.writeAttribute("time", String.format("%.3f", tx.avgTRT))
 
-            return sw.buffer.toString().toByteArray(StandardCharsets.UTF_8)
+            if (isSlaBreached(tx)) {
+                newLine(xml, 2)
+                xml.writeStartElement("failure")
+                xml.writeAttribute(
+                    "message",
+                    "${tx.breakers}% of transactions exceeded the SLA threshold of ${tx.slaThreshold} sec"
+                )
+                xml.writeAttribute("type", "SLA")
+                xml.writeCharacters(
+                    "Percentile TRT: ${tx.percentileTRT} sec, AVG: ${tx.avgTRT} sec, " +
+                            "Min: ${tx.minTRT} sec, Max: ${tx.maxTRT} sec, STD. Deviation: ${tx.stdDeviation}, " +
+                            "Passed: ${tx.passed}, Failed: ${tx.failed}, Percentile Trend: ${tx.slaTrend}"
+                )
+                xml.writeEndElement()
+                newLine(xml, 1)
+            }
+            xml.writeEndElement()
         }
 
-        private fun generatePropertyElement(
+        private fun writeProperty(
+            xml: XMLStreamWriter,
             name: String,
             value: String,
-            xml: Document,
             valueInContent: Boolean
-        ): Element {
-            val pReport = xml.createElement("property")
-            pReport.setAttribute("name", name)
+        ) {
+            newLine(xml, 2)
+            xml.writeStartElement("property")
+            xml.writeAttribute("name", name)
             if (valueInContent) {
-                pReport.textContent = value
+                xml.writeCharacters(value)
             } else {
-                pReport.setAttribute("value", value)
+                xml.writeAttribute("value", value)
             }
-            return pReport
+            xml.writeEndElement()
+        }
+
+        private fun newLine(xml: XMLStreamWriter, depth: Int) {
+            xml.writeCharacters("\n" + INDENT.repeat(depth))
         }
     }
 }
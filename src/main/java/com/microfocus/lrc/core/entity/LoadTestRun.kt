@@ -25,7 +25,7 @@ class LoadTestRun(
     var status: String = "NA"
     var isTerminated: Boolean = false
     val reports: MutableMap<String, Int> = mutableMapOf()
-    val reportsByteArray: MutableMap<String, ByteArray> = mutableMapOf()
+    val reportFiles: MutableMap<String, ReportFile> = mutableMapOf()
     var startTime: Long = -1
     var endTime: Long = -1
 
@@ -38,6 +38,10 @@ class LoadTestRun(
     @Transient
     var transactions = arrayOf<TestRunTransactionsResponse>()
 
+    // validator of the last status response, for conditional polling
+    @Transient
+    var statusETag: String? = null
+
     fun testRunCompletelyEnded(): Boolean {
         return this.statusEnum.isEnded && this.isTerminated
     }
@@ -79,6 +79,17 @@ public final class TrendingDataWrapper implements Serializable {
         }
     }
 
+    /**
+     * the trending data of a benchmark, as stand-alone wrapper.
+     */
+    public TrendingDataWrapper(
+            final TrendingData trendingData,
+            final String tenantId
+    ) {
+        this.trendingData = trendingData;
+        this.tenantId = tenantId;
+    }
+
     public TrendingData getTrendingData() {
         return trendingData;
     }
@@ -0,0 +1,153 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.Utils
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * JVM-wide cache of load test metadata (definition, transactions and percentile),
+ * keyed by server url, tenant, credentials, project and test.
+ * The credentials are part of the key so that a load test cached by one user is not served to another
+ * one who is not allowed to read it; only a digest of the secret is kept.
+ *
+ * Entries are fresh for [Constants.LOAD_TEST_CACHE_TTL], then revalidated with the ETag / Last-Modified
+ * validators of the cached response when the server sent any. The least recently used entries are dropped
+ * beyond [Constants.LOAD_TEST_CACHE_MAX_ENTRIES].
+ *
+ * The cached values are shared, [LoadTestService] hands out copies of them.
+ * The cache lives in the JVM that runs the [Runner]: the controller for lrcRunTestAsync, but the agent of
+ * the workspace for lrcRunTest, so builds on different agents do not share their entries.
+ */
+class LoadTestMetadataCache {
+    enum class Kind {
+        LOAD_TEST,
+        TRANSACTIONS,
+        PERCENTILE
+    }
+
+    data class CacheKey(
+        val url: String,
+        val tenantId: String?,
+        val username: String?,
+        val passwordDigest: String,
+        val projectId: Int,
+        val testId: Int,
+        val kind: Kind,
+    )
+
+    private class Entry(
+        val value: Any,
+        val etag: String?,
+        val lastModified: String?,
+    ) {
+        @Volatile
+        var fetchedAt: Long = System.currentTimeMillis()
+
+        fun isFresh(): Boolean {
+            return System.currentTimeMillis() - this.fetchedAt < Constants.LOAD_TEST_CACHE_TTL
+        }
+    }
+
+    companion object {
+        private val entries = object : LinkedHashMap<CacheKey, Entry>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, Entry>?): Boolean {
+                return this.size > Constants.LOAD_TEST_CACHE_MAX_ENTRIES
+            }
+        }
+
+        private val hits = AtomicLong()
+        private val misses = AtomicLong()
+        private val revalidations = AtomicLong()
+
+        @JvmStatic
+        fun keyOf(serverConfiguration: ServerConfiguration, testId: Int, kind: Kind): CacheKey {
+            return CacheKey(
+                serverConfiguration.url,
+                serverConfiguration.tenantId,
+                serverConfiguration.username,
+                Utils.sha256Hex(serverConfiguration.password),
+                serverConfiguration.projectId,
+                testId,
+                kind
+            )
+        }
+
+        /**
+         * the cached value if it is still fresh, counted as a hit.
+         */
+        @JvmStatic
+        fun <T> getFresh(key: CacheKey): T? {
+            val entry = synchronized(entries) { entries[key] } ?: return null
+            if (!entry.isFresh()) {
+                return null
+            }
+
+            hits.incrementAndGet()
+            @Suppress("UNCHECKED_CAST")
+            return entry.value as T
+        }
+
+        /**
+         * conditional request headers for a stale entry, empty if there is nothing to revalidate.
+         */
+        @JvmStatic
+        fun validators(key: CacheKey): Map<String, String> {
+            val entry = synchronized(entries) { entries[key] } ?: return emptyMap()
+            val headers = HashMap<String, String>()
+            entry.etag?.let { headers["If-None-Match"] = it }
+            entry.lastModified?.let { headers["If-Modified-Since"] = it }
+
+            return headers
+        }
+
+        /**
+         * the server answered 304, the cached value is fresh again. null if it has been evicted meanwhile.
+         */
+        @JvmStatic
+        fun <T> revalidated(key: CacheKey): T? {
+            val entry = synchronized(entries) { entries[key] } ?: return null
+            entry.fetchedAt = System.currentTimeMillis()
+            revalidations.incrementAndGet()
+
+            @Suppress("UNCHECKED_CAST")
+            return entry.value as T
+        }
+
+        @JvmStatic
+        fun put(key: CacheKey, value: Any, etag: String?, lastModified: String?) {
+            misses.incrementAndGet()
+            synchronized(entries) {
+                entries[key] = Entry(value, etag, lastModified)
+            }
+        }
+
+        @JvmStatic
+        fun stats(): String {
+            val size = synchronized(entries) { entries.size }
+            return "${hits.get()} hits, ${revalidations.get()} revalidated, ${misses.get()} misses, $size entries"
+        }
+
+        @JvmStatic
+        fun clear() {
+            synchronized(entries) {
+                entries.clear()
+            }
+            hits.set(0)
+            misses.set(0)
+            revalidations.set(0)
+        }
+    }
+}
@@ -12,29 +12,37 @@
 
 package com.microfocus.lrc.core.service
 
-import com.google.gson.Gson
 import com.google.gson.JsonObject
 import com.google.gson.JsonSyntaxException
 import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.JsonDecoder
 import com.microfocus.lrc.core.Utils
 import com.microfocus.lrc.core.entity.*
 import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.Response
 import java.io.IOException
+import java.util.concurrent.CompletableFuture
 
 class LoadTestRunService(
     private val client: ApiClient,
     private val loggerProxy: LoggerProxy,
 ) {
     fun fetch(runId: String): LoadTestRun? {
-        val apiPath = ApiGetTestRun(
+        return this.parseTestRun(runId, client.get(testRunPath(runId)))
+    }
+
+    private fun testRunPath(runId: String): String {
+        return ApiGetTestRun(
             mapOf("runId" to runId)
         ).path
-        val response = client.get(apiPath)
+    }
+
+    private fun parseTestRun(runId: String, response: Response): LoadTestRun? {
         response.use {
             if (response.isSuccessful) {
                 val json = response.body?.string() ?: return null
                 val jsonObj = Utils.parseJsonString(json, "Failed to parse test run data for #${runId}")
-                val lt = LoadTest(client.getServerConfiguration().projectId, jsonObj.get("testId").asInt)
+                val lt = LoadTest(jsonObj.get("testId").asInt, client.getServerConfiguration().projectId)
                 val testRun = LoadTestRun(
                     runId.toInt(),
                     lt
@@ -63,7 +71,7 @@ class LoadTestRunService(
                 val json = response.body?.string()
                 val jsonObj: JsonObject
                 try {
-                    jsonObj = Gson().fromJson(json, JsonObject::class.java)
+                    jsonObj = JsonDecoder.gson.fromJson(json, JsonObject::class.java)
                 } catch (ex: Exception) {
                     this.loggerProxy.error("Failed to parse run status")
                     this.loggerProxy.debug("Got run status response: $json")
@@ -83,15 +91,65 @@ class LoadTestRunService(
         }
     }
 
+    /**
+     * lightweight refresh while waiting for the run to end: conditional GET on the status resource,
+     * the run is left untouched if the server answers 304.
+     */
+    fun poll(testRun: LoadTestRun) {
+        val etag = testRun.statusETag
+        val headers = if (etag != null) mapOf("If-None-Match" to etag) else null
+        val res = this.client.get(this.runStatusPath(testRun), headers = headers)
+        var hasTerminatedFlag = true
+        res.use {
+            if (res.code == 304) {
+                return
+            }
+
+            if (!res.isSuccessful) {
+                if (res.code == 401) {
+                    throw IOException("Unauthorized")
+                }
+
+                throw IOException(
+                    "Failed to poll status for run ${testRun.id}. HTTP status code: ${res.code}, " +
+                            "body: ${JsonDecoder.peekForLog(res)}"
+                )
+            }
+
+            val jsonObj: JsonObject
+            try {
+                jsonObj = JsonDecoder.decode(res, JsonObject::class.java) ?: throw JsonSyntaxException("empty body")
+            } catch (ex: JsonSyntaxException) {
+                // e.g. the login page served instead of the resource
+                this.loggerProxy.error("Failed to parse run status")
+                throw IOException("Unauthorized")
+            }
+            testRun.update(jsonObj)
+            testRun.statusETag = res.header("ETag")
+            hasTerminatedFlag = jsonObj.has("isTerminated")
+        }
+
+        if (!hasTerminatedFlag && testRun.statusEnum.isEnded) {
+            // the status resource doesn't tell whether the run is terminated, ask the full resource once
+            this.fetch(testRun)
+        }
+    }
+
     fun fetchStatus(testRun: LoadTestRun) {
-        val apiPath = ApiGetRunStatus(
+        this.updateStatus(testRun, this.client.get(this.runStatusPath(testRun)))
+    }
+
+    private fun runStatusPath(testRun: LoadTestRun): String {
+        return ApiGetRunStatus(
             mapOf(
                 "projectId" to "${this.client.getServerConfiguration().projectId}",
                 "loadTestId" to "${testRun.loadTest.id}",
                 "runId" to "${testRun.id}",
             )
         ).path
-        val res = this.client.get(apiPath)
+    }
+
+    private fun updateStatus(testRun: LoadTestRun, res: Response) {
         res.use {
             val code = res.code
             if (code != 200) {
@@ -130,13 +188,18 @@ class LoadTestRunService(
     }
 
     fun getResults(runId: Int): TestRunResultsResponse {
-        val apiPath = ApiTestRunResults(
+        return this.parseResults(this.client.get(this.resultsPath(runId)))
+    }
+
+    private fun resultsPath(runId: Int): String {
+        return ApiTestRunResults(
             mapOf(
                 "runId" to "$runId",
             )
         ).path
+    }
 
-        val res = this.client.get(apiPath)
+    private fun parseResults(res: Response): TestRunResultsResponse {
         res.use {
             if (res.code != 200) {
                 val msg = "Failed to fetch test run results: ${res.code}, ${res.body?.string()}"
@@ -144,25 +207,29 @@ class LoadTestRunService(
                 throw IOException(msg)
             }
 
-            val body = res.body?.string()
-            // this.loggerProxy.debug("Fetched test run results: $body")
             try {
-                return Gson().fromJson(body, TestRunResultsResponse::class.java)
+                return JsonDecoder.decode(res, TestRunResultsResponse::class.java)
+                    ?: throw IOException("Empty test run results")
             } catch (e: JsonSyntaxException) {
-                this.loggerProxy.info("Failed to parse test run results: $body")
+                this.loggerProxy.info("Failed to parse test run results: ${e.message}")
                 throw e
             }
         }
     }
 
     fun getTransactions(runId: Int): Array<TestRunTransactionsResponse> {
-        val apiPath = ApiTestRunTransctions(
+        return this.parseTransactions(this.client.get(this.transactionsPath(runId)))
+    }
+
+    private fun transactionsPath(runId: Int): String {
+        return ApiTestRunTransctions(
             mapOf(
                 "runId" to "$runId",
             )
         ).path
+    }
 
-        val res = this.client.get(apiPath)
+    private fun parseTransactions(res: Response): Array<TestRunTransactionsResponse> {
         res.use {
             if (res.code != 200) {
                 val msg = "Failed to fetch test run transactions: ${res.code}, ${res.body?.string()}"
@@ -170,25 +237,33 @@ class LoadTestRunService(
                 throw IOException(msg)
             }
 
-            val body = res.body?.string()
-            this.loggerProxy.debug("Fetched transactions results: $body")
+            this.loggerProxy.debug("Fetched transactions results: ${JsonDecoder.peekForLog(res)}")
             try {
-                return Gson().fromJson(body, Array<TestRunTransactionsResponse>::class.java)
+                return JsonDecoder.decodeArray(res, TestRunTransactionsResponse::class.java).toTypedArray()
             } catch (e: JsonSyntaxException) {
-                this.loggerProxy.info("Failed to parse test run transactions: $body")
+                this.loggerProxy.info("Failed to parse test run transactions: ${e.message}")
                 throw e
             }
         }
     }
 
     fun getTrtSummary(runId: Int): Array<TestRunTrtSummaryResponse> {
-        val apiPath = ApiTestRunTrtSummary(
+        return this.parseTrtSummary(this.client.get(this.trtSummaryPath(runId)))
+    }
+
+    fun getTrtSummaryAsync(runId: Int): CompletableFuture<Array<TestRunTrtSummaryResponse>> {
+        return this.client.getAsync(this.trtSummaryPath(runId), null) { this.parseTrtSummary(it) }
+    }
+
+    private fun trtSummaryPath(runId: Int): String {
+        return ApiTestRunTrtSummary(
             mapOf(
                 "runId" to "$runId",
             )
         ).path
+    }
 
-        val res = this.client.get(apiPath)
+    private fun parseTrtSummary(res: Response): Array<TestRunTrtSummaryResponse> {
         res.use {
             if (res.code != 200) {
                 val msg = "Failed to fetch test run trt summary: ${res.code}, ${res.body?.string()}"
@@ -196,12 +271,11 @@ class LoadTestRunService(
                 throw IOException(msg)
             }
 
-            val body = res.body?.string()
-            this.loggerProxy.debug("Fetched trt summary results: $body")
+            this.loggerProxy.debug("Fetched trt summary results: ${JsonDecoder.peekForLog(res)}")
             try {
-                return Gson().fromJson(body, Array<TestRunTrtSummaryResponse>::class.java)
+                return JsonDecoder.decodeArray(res, TestRunTrtSummaryResponse::class.java).toTypedArray()
             } catch (e: JsonSyntaxException) {
-                this.loggerProxy.info("Failed to parse test run trt summary: $body")
+                this.loggerProxy.info("Failed to parse test run trt summary: ${e.message}")
                 throw e
             }
         }
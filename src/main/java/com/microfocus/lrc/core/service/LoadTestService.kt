@@ -19,21 +19,45 @@ import com.microfocus.lrc.core.ApiClient
 import com.microfocus.lrc.core.Constants
 import com.microfocus.lrc.core.Utils
 import com.microfocus.lrc.core.entity.*
+import com.microfocus.lrc.core.service.LoadTestMetadataCache.Kind
 import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.Response
 import java.io.IOException
+import java.util.concurrent.CompletableFuture
 
 class LoadTestService(
     private val client: ApiClient,
     private val loggerProxy: LoggerProxy
 ) {
     fun fetch(id: Int): LoadTest {
-        val apiPath = ApiGetLoadTest(
+        return this.getCached(id, Kind.LOAD_TEST, this.loadTestPath(id)) { this.parseLoadTest(id, it) }
+    }
+
+    // the cached instances are shared, callers get their own copy to change
+    @Suppress("UNCHECKED_CAST")
+    private fun <T : Any> copyOf(value: T): T {
+        return when (value) {
+            is LoadTest -> {
+                val lt = LoadTest(value.id, value.projectId)
+                lt.name = value.name
+                lt as T
+            }
+            // the transactions themselves are immutable
+            is Array<*> -> value.copyOf() as T
+            else -> value
+        }
+    }
+
+    private fun loadTestPath(id: Int): String {
+        return ApiGetLoadTest(
             mapOf(
                 "projectId" to "${this.client.getServerConfiguration().projectId}",
                 "loadTestId" to "$id"
             )
         ).path
-        val res = this.client.get(apiPath)
+    }
+
+    private fun parseLoadTest(id: Int, res: Response): LoadTest {
         res.use {
             val code = res.code
             val bodyString = res.body?.string()
@@ -76,13 +100,23 @@ class LoadTestService(
     }
 
     fun getTransactions(id: Int): Array<LoadTestTransactionsResponse> {
-        val apiPath = ApiGetLoadTestTransactions(
+        return this.getCached(id, Kind.TRANSACTIONS, this.transactionsPath(id)) { this.parseTransactions(it) }
+    }
+
+    fun getTransactionsAsync(id: Int): CompletableFuture<Array<LoadTestTransactionsResponse>> {
+        return this.getCachedAsync(id, Kind.TRANSACTIONS, this.transactionsPath(id)) { this.parseTransactions(it) }
+    }
+
+    private fun transactionsPath(id: Int): String {
+        return ApiGetLoadTestTransactions(
             mapOf(
                 "projectId" to "${this.client.getServerConfiguration().projectId}",
                 "loadTestId" to "$id"
             )
         ).path
-        val res = this.client.get(apiPath)
+    }
+
+    private fun parseTransactions(res: Response): Array<LoadTestTransactionsResponse> {
         res.use {
             if (res.code != 200) {
                 val msg = "Failed to fetch load tests transactions: ${res.code}, ${res.body?.string()}"
@@ -102,13 +136,23 @@ class LoadTestService(
     }
 
     fun getPercentile(id: Int): Int {
-        val apiPath = ApiGetLoadTestPercentile(
+        return this.getCached(id, Kind.PERCENTILE, this.percentilePath(id)) { this.parsePercentile(id, it) }
+    }
+
+    fun getPercentileAsync(id: Int): CompletableFuture<Int> {
+        return this.getCachedAsync(id, Kind.PERCENTILE, this.percentilePath(id)) { this.parsePercentile(id, it) }
+    }
+
+    private fun percentilePath(id: Int): String {
+        return ApiGetLoadTestPercentile(
             mapOf(
                 "projectId" to "${this.client.getServerConfiguration().projectId}",
                 "loadTestId" to "$id"
             )
         ).path
-        val res = this.client.get(apiPath)
+    }
+
+    private fun parsePercentile(id: Int, res: Response): Int {
         res.use {
             val code = res.code
             val bodyString = res.body?.string()
@@ -121,4 +165,68 @@ class LoadTestService(
         }
     }
 
+    // region metadata cache
+    private fun <T : Any> getCached(id: Int, kind: Kind, apiPath: String, parse: (Response) -> T): T {
+        val key = LoadTestMetadataCache.keyOf(this.client.getServerConfiguration(), id, kind)
+        val cached = LoadTestMetadataCache.getFresh<T>(key)
+        if (cached != null) {
+            this.logCache(key, "from cache")
+            return this.copyOf(cached)
+        }
+
+        val res = this.client.get(apiPath, headers = LoadTestMetadataCache.validators(key))
+        return this.copyOf(this.handleCached(key, apiPath, res, parse))
+    }
+
+    private fun <T : Any> getCachedAsync(
+        id: Int,
+        kind: Kind,
+        apiPath: String,
+        parse: (Response) -> T
+    ): CompletableFuture<T> {
+        val key = LoadTestMetadataCache.keyOf(this.client.getServerConfiguration(), id, kind)
+        val cached = LoadTestMetadataCache.getFresh<T>(key)
+        if (cached != null) {
+            this.logCache(key, "from cache")
+            return CompletableFuture.completedFuture(this.copyOf(cached))
+        }
+
+        return this.client.getAsync(apiPath, LoadTestMetadataCache.validators(key)) {
+            this.copyOf(this.handleCached(key, apiPath, it, parse))
+        }
+    }
+
+    private fun <T : Any> handleCached(
+        key: LoadTestMetadataCache.CacheKey,
+        apiPath: String,
+        res: Response,
+        parse: (Response) -> T
+    ): T {
+        if (res.code == 304) {
+            res.close()
+            val revalidated = LoadTestMetadataCache.revalidated<T>(key)
+            if (revalidated != null) {
+                this.logCache(key, "not modified")
+                return revalidated
+            }
+
+            // evicted meanwhile, fetch it again unconditionally
+            return this.handleCached(key, apiPath, this.client.get(apiPath), parse)
+        }
+
+        val etag = res.header("ETag")
+        val lastModified = res.header("Last-Modified")
+        val value = parse(res)
+        LoadTestMetadataCache.put(key, value, etag, lastModified)
+        this.logCache(key, "fetched")
+
+        return value
+    }
+
+    private fun logCache(key: LoadTestMetadataCache.CacheKey, event: String) {
+        this.loggerProxy.debug(
+            "Load test #${key.testId} ${key.kind.name.lowercase()} $event, cache: ${LoadTestMetadataCache.stats()}"
+        )
+    }
+    // endregion
 }
@@ -0,0 +1,124 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.TestRunStatus
+import kotlin.math.min
+import kotlin.random.Random
+
+/**
+ * decides how long to wait before the next test run status poll.
+ */
+interface PollingStrategy {
+    /**
+     * delay in ms after a successful poll, based on the current state of the run.
+     */
+    fun nextDelay(testRun: LoadTestRun): Long
+
+    /**
+     * delay in ms after [attempt] consecutive failed polls (starting from 1).
+     */
+    fun errorDelay(attempt: Int): Long
+
+    companion object {
+        @JvmStatic
+        fun forOptions(isTestMode: Boolean): PollingStrategy {
+            return if (isTestMode) {
+                FixedPollingStrategy(Constants.TEST_RUN_POLLING_TEST_MODE_INTERVAL)
+            } else {
+                AdaptivePollingStrategy()
+            }
+        }
+    }
+}
+
+class FixedPollingStrategy(private val interval: Long) : PollingStrategy {
+    override fun nextDelay(testRun: LoadTestRun): Long {
+        return this.interval
+    }
+
+    override fun errorDelay(attempt: Int): Long {
+        return this.interval
+    }
+}
+
+/**
+ * polls fast while a run is initializing or stopping, backs off gradually during a long RUNNING phase
+ * and uses jittered exponential backoff on errors, so concurrent runs don't poll in lockstep.
+ *
+ * the expected test duration is not exposed by the test run API, so the RUNNING backoff is driven
+ * by the time elapsed since the run entered RUNNING.
+ */
+class AdaptivePollingStrategy(
+    private val fastInterval: Long = Constants.TEST_RUN_POLLING_FAST_INTERVAL,
+    private val baseInterval: Long = Constants.TEST_RUN_END_POLLING_INTERVAL,
+    private val maxInterval: Long = Constants.TEST_RUN_POLLING_MAX_INTERVAL,
+    private val errorInterval: Long = Constants.TEST_RUN_POLLING_ERROR_INTERVAL,
+    private val random: Random = Random.Default,
+    private val clock: () -> Long = System::currentTimeMillis
+) : PollingStrategy {
+    companion object {
+        // RUNNING interval grows by 1s for every 30s the run has been running
+        private const val RUNNING_BACKOFF_RATIO = 30
+        private const val JITTER_RATIO = 0.1
+        private const val MAX_ERROR_SHIFT = 16
+    }
+
+    private var runningSince: Long = -1
+
+    override fun nextDelay(testRun: LoadTestRun): Long {
+        val status = testRun.statusEnum
+        if (status != TestRunStatus.RUNNING) {
+            this.runningSince = -1
+        }
+
+        val delay = when {
+            status.isEnded -> this.fastInterval // waiting for isTerminated
+            status == TestRunStatus.RUNNING -> this.runningDelay()
+            status == TestRunStatus.PAUSED -> this.baseInterval
+            else -> this.fastInterval // CHECKING_STATUS, INITIALIZING, STOPPING, NA
+        }
+
+        return this.jitter(delay)
+    }
+
+    override fun errorDelay(attempt: Int): Long {
+        val shift = (attempt.coerceAtLeast(1) - 1).coerceAtMost(MAX_ERROR_SHIFT)
+        val ceiling = min(this.maxInterval, this.errorInterval shl shift)
+        val half = ceiling / 2
+
+        // "equal jitter": keep at least half of the backoff, randomize the rest
+        return half + this.random.nextLong(half + 1)
+    }
+
+    private fun runningDelay(): Long {
+        val now = this.clock()
+        if (this.runningSince < 0) {
+            this.runningSince = now
+        }
+        val elapsed = now - this.runningSince
+
+        return (elapsed / RUNNING_BACKOFF_RATIO).coerceIn(this.baseInterval, this.maxInterval)
+    }
+
+    private fun jitter(delay: Long): Long {
+        val spread = (delay * JITTER_RATIO).toLong()
+        if (spread <= 0) {
+            return delay
+        }
+
+        return delay - spread + this.random.nextLong(2 * spread + 1)
+    }
+}
@@ -16,32 +16,133 @@ import com.google.gson.Gson
 import com.google.gson.JsonObject
 import com.microfocus.lrc.core.ApiClient
 import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.CsvWriter
 import com.microfocus.lrc.core.XmlReport
 import com.microfocus.lrc.core.entity.*
 import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.Response
 import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+private class PendingReport(val reportId: Int, val fileName: String) {
+    var file: ReportFile? = null
+
+    // set when its check is cancelled, a dropped download is not resumed then
+    @Volatile
+    var cancelled = false
+
+    // the request resuming the download, if any
+    @Volatile
+    var resumed: Future<Response>? = null
+}
+
+/**
+ * the readiness request of a report, and the check of its response (which saves a ready report).
+ */
+private class ReadinessCheck(
+    val report: PendingReport,
+    val response: CompletableFuture<Response>,
+    val ready: CompletableFuture<Boolean>
+) {
+    fun cancel() {
+        this.report.cancelled = true
+        this.ready.cancel(true)
+        this.response.cancel(true)
+        this.report.resumed?.cancel(true)
+    }
+}
 
 class ReportDownloader(
     private val apiClient: ApiClient,
     private val loggerProxy: LoggerProxy,
-    private val testRunOptions: TestRunOptions
+    private val testRunOptions: TestRunOptions,
+    // how long the SLA info waits for its lookups, before leaving the slow ones out
+    private val slaLookupTimeout: Long = Constants.SLA_LOOKUP_TIMEOUT
 ) {
+    private val loadTestSvc = LoadTestService(this.apiClient, this.loggerProxy)
+    private val loadTestRunSvc = LoadTestRunService(this.apiClient, this.loggerProxy)
+
     companion object {
+        // checking and saving reports reads response bodies, kept off the HTTP client's dispatcher threads
+        private val downloadExecutor: ExecutorService by lazy {
+            val counter = AtomicInteger()
+            val executor = ThreadPoolExecutor(
+                Constants.REPORT_DOWNLOAD_THREADS,
+                Constants.REPORT_DOWNLOAD_THREADS,
+                60,
+                TimeUnit.SECONDS,
+                LinkedBlockingQueue()
+            ) { r ->
+                val t = Thread(r, "LRC report download #${counter.incrementAndGet()}")
+                t.isDaemon = true
+                t
+            }
+            executor.allowCoreThreadTimeOut(true)
+            executor
+        }
+
+        @JvmStatic
+        val TRANSACTION_COLUMNS: List<CsvWriter.Column<TestRunTransactionsResponse>> = listOf(
+            CsvWriter.Column("Script Name") { it.scriptName },
+            CsvWriter.Column("Transaction") { it.name },
+            CsvWriter.Column("%Breakers") { it.breakers },
+            CsvWriter.Column("SLA Status") { it.slaStatus },
+            CsvWriter.Column("AVG Duration") { it.avgTRT },
+            CsvWriter.Column("Min") { it.minTRT },
+            CsvWriter.Column("Max") { it.maxTRT },
+            CsvWriter.Column("STD. Deviation") { it.stdDeviation },
+            CsvWriter.Column("Passed") { it.passed },
+            CsvWriter.Column("Failed") { it.failed },
+            CsvWriter.Column("Percentile") { it.percentileTRT },
+            CsvWriter.Column("SLA Threshold") { it.slaThreshold },
+            CsvWriter.Column("Percentile Trend") { it.slaTrend },
+        )
+
+        /**
+         * stream the transactions as CSV into [out], which is closed afterwards.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun writeCsv(
+            transactions: Iterable<TestRunTransactionsResponse>,
+            out: OutputStream,
+            columns: List<CsvWriter.Column<TestRunTransactionsResponse>> = TRANSACTION_COLUMNS,
+            gzip: Boolean = false
+        ) {
+            CsvWriter(out, columns, gzip).use { writer ->
+                writer.writeHeader()
+                writer.writeRows(transactions)
+            }
+        }
+
         @JvmStatic
         fun writeCsvBytesArray(transactions: Array<TestRunTransactionsResponse>): ByteArray {
             val stream = ByteArrayOutputStream()
-            val writer = stream.writer()
-            writer.appendLine("Script Name, Transaction, %Breakers, SLA Status, AVG Duration, Min, Max, STD. Deviation, Passed, Failed, Percentile, SLA Threshold, Percentile Trend")
-            transactions.forEach { tx ->
-                writer.appendLine("${tx.scriptName}, ${tx.name}, ${tx.breakers}, ${tx.slaStatus}, ${tx.avgTRT}, ${tx.minTRT}, ${tx.maxTRT}, ${tx.stdDeviation}, ${tx.passed}, ${tx.failed}, ${tx.percentileTRT}, ${tx.slaThreshold}, ${tx.slaTrend}")
-            }
-            writer.flush()
+            writeCsv(transactions.asIterable(), stream)
 
             return stream.toByteArray()
         }
     }
 
-    fun download(testRun: LoadTestRun, reportTypes: Array<String>) {
+    /**
+     * generate the reports of the run and save them into [dir], as soon as a report is ready.
+     */
+    fun download(testRun: LoadTestRun, reportTypes: Array<String>, dir: File) {
         var validReportTypes = arrayOf("csv", "pdf")
         if (this.testRunOptions.skipPdfReport) {
             validReportTypes = arrayOf("csv")
@@ -56,31 +157,71 @@ class ReportDownloader(
             return
         }
 
-        // request reports generating
-        filteredReportTypes.forEach { reportType ->
+        // request all reports generating up front, they are generated in parallel
+        val pending = filteredReportTypes.map { reportType ->
             this.loggerProxy.info("Requesting $reportType report ...")
-            val reportId = this.requestReportId(testRun.id, reportType)
-            // wait for the report to be ready
-            var retryWaitingTimes = 0
-            var maxRetry = Constants.REPORT_READY_MAX_RETRY
-            if (reportType == "pdf") {
-                maxRetry = Constants.PDF_REPORT_READY_MAX_RETRY
+            PendingReport(this.requestReportId(testRun.id, reportType), genFileName(reportType, testRun))
+        }.toMutableList()
+
+        // wait for the reports to be ready, with one deadline for all of them
+        val maxRetry = if (filteredReportTypes.contains("pdf")) {
+            Constants.PDF_REPORT_READY_MAX_RETRY
+        } else {
+            Constants.REPORT_READY_MAX_RETRY
+        }
+        val pollingInterval = if (testRunOptions.isTestMode) 100 else Constants.REPORT_DOWNLOAD_POLLING_INTERVAL
+        val deadline = System.currentTimeMillis() + maxRetry * pollingInterval
+
+        while (pending.isNotEmpty()) {
+            val ready = this.pollReady(pending, dir)
+            ready.forEach { report ->
+                testRun.reports[report.fileName] = report.reportId
+                report.file?.let { testRun.reportFiles[report.fileName] = it }
             }
+            pending.removeAll(ready)
 
-            val pollingInterval = if (testRunOptions.isTestMode) 100 else Constants.REPORT_DOWNLOAD_POLLING_INTERVAL
-
-            while (retryWaitingTimes < maxRetry && !this.isReportReady(reportId)) {
-                Thread.sleep(pollingInterval)
-                retryWaitingTimes += 1
+            if (pending.isEmpty()) {
+                break
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                val waited = maxRetry * pollingInterval / 1000
+                pending.forEach { report ->
+                    this.loggerProxy.info("Report #${report.reportId} is not ready after ${waited}s")
+                }
+                break
             }
 
-            if (retryWaitingTimes >= maxRetry) {
-                this.loggerProxy.info("Report #$reportId is not ready after $retryWaitingTimes retries")
-                return
+            Thread.sleep(pollingInterval)
+        }
+    }
+
+    /**
+     * check the readiness of all pending reports concurrently, return the ready ones.
+     * the first failed check cancels the others, with their requests and downloads.
+     */
+    private fun pollReady(pending: List<PendingReport>, dir: File): List<PendingReport> {
+        val failure = AtomicReference<Throwable>()
+        val checks = pending.map { report -> this.isReportReadyAsync(report, dir) }
+        checks.forEach { check ->
+            check.ready.whenComplete { _, ex ->
+                if (ex != null && ex !is CancellationException) {
+                    val cause = if (ex is CompletionException) ex.cause ?: ex else ex
+                    if (failure.compareAndSet(null, cause)) {
+                        checks.forEach { it.cancel() }
+                    }
+                }
             }
+        }
 
-            val fileName = genFileName(reportType, testRun)
-            testRun.reports[fileName] = reportId
+        try {
+            return checks.filter { it.ready.get() }.map { it.report }
+        } catch (e: InterruptedException) {
+            checks.forEach { it.cancel() }
+            throw e
+        } catch (e: ExecutionException) {
+            throw failure.get() ?: e.cause ?: e
+        } catch (e: CancellationException) {
+            throw failure.get() ?: e
         }
     }
 
@@ -111,14 +252,30 @@ class ReportDownloader(
         }
     }
 
-    private fun isReportReady(reportId: Int): Boolean {
+    private fun isReportReadyAsync(report: PendingReport, dir: File): ReadinessCheck {
         val apiPath = ApiTestRunReport(
             mapOf(
-                "reportId" to "$reportId",
+                "reportId" to "${report.reportId}",
             )
         ).path
 
-        val res = this.apiClient.get(apiPath)
+        val response = this.apiClient.getAsync(apiPath)
+        val ready = response.thenApplyAsync({ this.isReportReady(report, apiPath, it, dir) }, downloadExecutor)
+        ready.whenComplete { _, ex ->
+            if (ex is CancellationException) {
+                // cancelled before the check consumed the response, or aborts its download
+                response.thenAccept { it.close() }
+            }
+        }
+
+        return ReadinessCheck(report, response, ready)
+    }
+
+    /**
+     * the report content is sent as soon as it is ready, it is saved from this response.
+     */
+    private fun isReportReady(report: PendingReport, apiPath: String, res: Response, dir: File): Boolean {
+        val reportId = report.reportId
         res.use {
             if (res.code != 200) {
                 this.loggerProxy.info("Report #$reportId is not ready: ${res.code}, ${res.body?.string()}")
@@ -138,6 +295,7 @@ class ReportDownloader(
 
             if (contentType?.contains("application/octet-stream") == true) {
                 this.loggerProxy.info("Report #$reportId is ready.")
+                report.file = this.save(report, apiPath, res, File(dir, report.fileName))
 
                 return true
             }
@@ -146,18 +304,67 @@ class ReportDownloader(
         }
     }
 
+    /**
+     * continue from the readiness response, resume with Range requests if the connection drops.
+     */
+    private fun save(report: PendingReport, apiPath: String, res: Response, file: File): ReportFile {
+        val result = ResumableDownloader(
+            this.loggerProxy,
+            retryDelay = PollingStrategy.forOptions(this.testRunOptions.isTestMode)::errorDelay
+        ) { offset ->
+            if (offset > 0) {
+                this.resume(report, apiPath, mapOf("Range" to "bytes=$offset-"))
+            } else {
+                this.resume(report, apiPath, null)
+            }
+        }.download(file, res)
+
+        return ReportFile(file.name, result.size, result.sha256)
+    }
+
+    /**
+     * request the report again, unless its check was cancelled (which also cancels this request).
+     * the CancellationException is not an IOException, so the download gives up instead of retrying.
+     */
+    private fun resume(report: PendingReport, apiPath: String, headers: Map<String, String>?): Response {
+        if (report.cancelled) {
+            throw CancellationException("Report #${report.reportId} download cancelled")
+        }
+        val response = this.apiClient.getAsync(apiPath, headers = headers)
+        report.resumed = response
+        if (report.cancelled) {
+            response.cancel(true)
+        }
+
+        try {
+            return response.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * write a generated report into [dir] and record its metadata on the run.
+     */
+    private fun writeReportFile(testRun: LoadTestRun, dir: File, fileName: String, content: (OutputStream) -> Unit) {
+        dir.mkdirs()
+        val file = File(dir, fileName)
+        val digest = MessageDigest.getInstance("SHA-256")
+        DigestOutputStream(file.outputStream().buffered(), digest).use { content(it) }
+        testRun.reportFiles[fileName] = ReportFile(
+            fileName,
+            file.length(),
+            digest.digest().joinToString("") { "%02x".format(it) }
+        )
+    }
+
     private fun genFileName(reportType: String, testRun: LoadTestRun): String {
         return "lrc_report_${this.apiClient.getServerConfiguration().tenantId}-${testRun.id}.${reportType}"
     }
 
     fun fetchTrending(testRun: LoadTestRun, benchmark: TrendingDataWrapper?): TrendingDataWrapper {
-        val loadTestRunSvc = LoadTestRunService(
-            this.apiClient,
-            this.loggerProxy
-        )
-
-        val results = loadTestRunSvc.getResults(testRun.id)
-        val transactions = loadTestRunSvc.getTransactions(testRun.id)
+        val results = this.loadTestRunSvc.getResults(testRun.id)
+        val transactions = this.loadTestRunSvc.getTransactions(testRun.id)
         return TrendingDataWrapper(
             testRun,
             results,
@@ -167,7 +374,7 @@ class ReportDownloader(
         )
     }
 
-    fun genXmlFile(testRun: LoadTestRun) {
+    fun genXmlFile(testRun: LoadTestRun, dir: File) {
         val fileName = genFileName("xml", testRun)
         val reportUrl =
             "${this.apiClient.getServerConfiguration().url}/run-overview/${testRun.id}/report/?TENANTID=${this.apiClient.getServerConfiguration().tenantId}&projectId=${this.apiClient.getServerConfiguration().projectId}"
@@ -187,18 +394,20 @@ class ReportDownloader(
             slaInfo = getSlaInfo(testRun)
         }
 
-        val content = XmlReport.write(
-            testRun,
-            reportUrl,
-            dashboardUrl,
-            slaInfo
-        )
-        testRun.reportsByteArray[fileName] = content
+        this.writeReportFile(testRun, dir, fileName) {
+            XmlReport.write(
+                testRun,
+                reportUrl,
+                dashboardUrl,
+                slaInfo,
+                it
+            )
+        }
     }
 
-    fun genTxCsv(testRun: LoadTestRun) {
+    fun genTxCsv(testRun: LoadTestRun, dir: File) {
         val fileName = "lrc_report_trans_${this.apiClient.getServerConfiguration().tenantId}-${testRun.id}.csv"
-        testRun.reportsByteArray[fileName] = writeCsvBytesArray(testRun.transactions)
+        this.writeReportFile(testRun, dir, fileName) { writeCsv(testRun.transactions.asIterable(), it) }
     }
 
     // region getSlaInfo
@@ -220,26 +429,45 @@ class ReportDownloader(
         val testId = testRun.loadTest.id
         val runId = testRun.id
 
-        val loadTestSvc = LoadTestService(
-            this.apiClient,
-            this.loggerProxy
-        )
-        val loadTestRunSvc = LoadTestRunService(
-            this.apiClient,
-            this.loggerProxy
-        )
-
-        val percentile = loadTestSvc.getPercentile(testId)
-        val loadTestTransactions = loadTestSvc.getTransactions(testId)
-        val testRunTrtSummary = loadTestRunSvc.getTrtSummary(runId)
-
-        val scriptTransactionsMap = initScriptTransactionsMap(loadTestTransactions)
-        val percentileTrtSla = getPercentileTrtSla(percentile, scriptTransactionsMap, testRun.transactions)
-        val failedTrxSla = getFailedTrxSla(scriptTransactionsMap, testRunTrtSummary)
+        // the lookups are independent, issue them together and wait for all of them with one deadline
+        val percentileFuture = this.loadTestSvc.getPercentileAsync(testId)
+        val loadTestTransactionsFuture = this.loadTestSvc.getTransactionsAsync(testId)
+        val testRunTrtSummaryFuture = this.loadTestRunSvc.getTrtSummaryAsync(runId)
+
+        val deadline = System.currentTimeMillis() + this.slaLookupTimeout
+        val percentile = this.awaitSlaLookup(percentileFuture, "percentile", deadline)
+        val loadTestTransactions = this.awaitSlaLookup(loadTestTransactionsFuture, "test transactions", deadline)
+        val testRunTrtSummary = this.awaitSlaLookup(testRunTrtSummaryFuture, "TRT summary", deadline)
+
+        // with partial results, the SLA text only covers what could be fetched
+        val scriptTransactionsMap = initScriptTransactionsMap(loadTestTransactions ?: arrayOf())
+        val percentileTrtSla = if (percentile != null) {
+            getPercentileTrtSla(percentile, scriptTransactionsMap, testRun.transactions)
+        } else {
+            PercentileTrtSla(null, 0.0, 0.0, 0)
+        }
+        val failedTrxSla = getFailedTrxSla(scriptTransactionsMap, testRunTrtSummary ?: arrayOf())
 
         return createSlaText(percentileTrtSla, failedTrxSla)
     }
 
+    /**
+     * wait for an SLA lookup until [deadline], null if it failed or timed out.
+     * a lookup timing out is cancelled, which cancels its call and closes its response.
+     */
+    private fun <T> awaitSlaLookup(future: CompletableFuture<T>, name: String, deadline: Long): T? {
+        return try {
+            future.get(maxOf(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+        } catch (e: TimeoutException) {
+            future.cancel(true)
+            this.loggerProxy.info("Fetching $name for SLA info timed out, it is left out.")
+            null
+        } catch (e: ExecutionException) {
+            this.loggerProxy.info("Failed to fetch $name for SLA info: ${e.cause?.message}, it is left out.")
+            null
+        }
+    }
+
     private fun initScriptTransactionsMap(loadTestTransactions: Array<LoadTestTransactionsResponse>): HashMap<Int, HashMap<String, LoadTestTransactionsResponse>> {
         val scriptTransactionsMap = HashMap<Int, HashMap<String, LoadTestTransactionsResponse>>()
         for (transaction in loadTestTransactions) {
@@ -0,0 +1,184 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.Response
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.Base64
+
+/**
+ * downloads a file into a `.part` file and resumes with a Range request from the last byte written
+ * when the connection drops. the result is checked against the announced length and, if the server
+ * sends a `Digest: sha-256=...` header, against the checksum.
+ *
+ * @param retryDelay delay in ms before the next attempt, after the given number of failed attempts (from 1),
+ * jittered exponential backoff like the polling of runs by default.
+ * @param fetch GET the resource, starting at the given offset (no Range header for 0).
+ */
+class ResumableDownloader(
+    private val loggerProxy: LoggerProxy,
+    private val maxAttempts: Int = Constants.REPORT_DOWNLOAD_MAX_ATTEMPTS,
+    private val retryDelay: (Int) -> Long = AdaptivePollingStrategy()::errorDelay,
+    private val fetch: (Long) -> Response
+) {
+    class Result(
+        val file: File,
+        val size: Long,
+        val sha256: String,
+        val elapsedMs: Long,
+        val attempts: Int
+    ) {
+        fun bytesPerSecond(): Long {
+            return if (this.elapsedMs > 0) this.size * 1000 / this.elapsedMs else this.size
+        }
+    }
+
+    private class HttpStatusException(val code: Int) : IOException("HTTP status code: $code") {
+        fun isRetryable(): Boolean {
+            return this.code == 408 || this.code == 429 || this.code >= 500
+        }
+    }
+
+    private class ContentRange(val start: Long, val total: Long)
+
+    /**
+     * @param first an already opened response for the whole resource, e.g. the report readiness check.
+     */
+    @Throws(IOException::class)
+    fun download(file: File, first: Response? = null): Result {
+        file.parentFile?.mkdirs()
+        val part = File(file.parentFile, "${file.name}.part")
+        val digest = MessageDigest.getInstance("SHA-256")
+        val startedAt = System.currentTimeMillis()
+
+        var offset = 0L
+        var expectedSize = -1L
+        var expectedSha256: String? = null
+        var attempts = 1
+        var res: Response? = first
+
+        try {
+            FileOutputStream(part, false).close()
+            while (true) {
+                try {
+                    val current = res ?: this.fetch(offset)
+                    res = null
+                    current.use {
+                        when (current.code) {
+                            206 -> {
+                                val range = parseContentRange(current.header("Content-Range"))
+                                if (range == null || range.start != offset) {
+                                    throw IOException("Unexpected Content-Range: ${current.header("Content-Range")}")
+                                }
+                                expectedSize = range.total
+                            }
+                            200 -> {
+                                if (offset > 0) {
+                                    // Range is not supported, start over
+                                    FileOutputStream(part, false).close()
+                                    digest.reset()
+                                    offset = 0
+                                }
+                                expectedSize = current.body?.contentLength() ?: -1
+                            }
+                            else -> throw HttpStatusException(current.code)
+                        }
+                        expectedSha256 = expectedSha256 ?: parseSha256Digest(current.header("Digest"))
+
+                        val body = current.body ?: throw EOFException("Empty body")
+                        FileOutputStream(part, true).use { out ->
+                            body.byteStream().use { input ->
+                                val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+                                var n = input.read(buffer)
+                                while (n >= 0) {
+                                    out.write(buffer, 0, n)
+                                    digest.update(buffer, 0, n)
+                                    offset += n
+                                    n = input.read(buffer)
+                                }
+                            }
+                        }
+                    }
+
+                    if (expectedSize >= 0 && offset < expectedSize) {
+                        throw EOFException("Connection closed at $offset of $expectedSize bytes")
+                    }
+                    break
+                } catch (e: IOException) {
+                    if ((e is HttpStatusException && !e.isRetryable()) || attempts >= this.maxAttempts) {
+                        throw e
+                    }
+                    val delay = this.retryDelay(attempts)
+                    attempts += 1
+                    this.loggerProxy.info(
+                        "Downloading ${file.name} interrupted at $offset bytes (${e.message}), " +
+                                "resuming in $delay ms ... $attempts/${this.maxAttempts}"
+                    )
+                    Thread.sleep(delay)
+                }
+            }
+
+            if (expectedSize >= 0 && offset != expectedSize) {
+                throw IOException("Size mismatch for ${file.name}: expected $expectedSize, got $offset bytes")
+            }
+            val sha256 = digest.digest().joinToString("") { "%02x".format(it) }
+            val expected = expectedSha256
+            if (expected != null && !expected.equals(sha256, ignoreCase = true)) {
+                throw IOException("Checksum mismatch for ${file.name}")
+            }
+
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+
+            val result = Result(file, offset, sha256, System.currentTimeMillis() - startedAt, attempts)
+            this.loggerProxy.info(
+                "Downloaded ${file.name}: ${result.size} bytes in ${result.elapsedMs} ms " +
+                        "(${result.bytesPerSecond() / 1024} KB/s, $attempts attempt(s))"
+            )
+
+            return result
+        } finally {
+            res?.close()
+            Files.deleteIfExists(part.toPath())
+        }
+    }
+
+    private fun parseContentRange(header: String?): ContentRange? {
+        // bytes <start>-<end>/<total>
+        val match = Regex("""bytes (\d+)-\d+/(\d+|\*)""").find(header ?: return null) ?: return null
+        val total = match.groupValues[2].toLongOrNull() ?: -1
+
+        return ContentRange(match.groupValues[1].toLong(), total)
+    }
+
+    private fun parseSha256Digest(header: String?): String? {
+        header ?: return null
+        val value = header.split(",")
+            .map { it.trim() }
+            .firstOrNull { it.startsWith("sha-256=", ignoreCase = true) }
+            ?.substringAfter("=") ?: return null
+
+        return try {
+            Base64.getDecoder().decode(value).joinToString("") { "%02x".format(it) }
+        } catch (e: IllegalArgumentException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.jenkins.LoggerProxy
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * JVM-wide monitor polling the status of all active test runs from one bounded scheduler,
+ * instead of one sleeping thread per run.
+ *
+ * a registered run is polled until it has completely ended, status changes are printed to the build log
+ * of the run, and the returned future is completed with the ended run (or the error that stopped polling).
+ *
+ * There is one instance in each JVM running builds:
+ * - on the controller, for `lrcRunTestAsync`; the build does not wait on a thread, it is resumed by the future.
+ * - on the node of the workspace, for the `lrcRunTest` build step; the build thread waits on the future there,
+ *   a freestyle build step cannot return before its run has ended.
+ *
+ * The plugin shuts down the controller's instance only. On an agent, the polling of a run is cancelled with the
+ * build step (aborted build or lost connection interrupts the waiting thread), and the daemon threads of the
+ * scheduler time out once no run is monitored, so an idle agent keeps no monitor thread.
+ */
+class RunMonitor internal constructor(threads: Int, keepAliveMillis: Long = 60000) {
+    private class MonitoredRun(
+        val testRun: LoadTestRun,
+        val loadTestRunService: LoadTestRunService,
+        val apiClient: ApiClient,
+        val pollingStrategy: PollingStrategy,
+        val loggerProxy: LoggerProxy,
+    ) {
+        val future = CompletableFuture<LoadTestRun>()
+        var retryTimes = 0
+        var loginRetryTimes = 0
+    }
+
+    companion object {
+        private var instance: RunMonitor? = null
+
+        @JvmStatic
+        @Synchronized
+        fun getInstance(): RunMonitor {
+            var monitor = instance
+            if (monitor == null || monitor.executor.isShutdown) {
+                monitor = RunMonitor(Constants.RUN_MONITOR_THREADS)
+                instance = monitor
+            }
+
+            return monitor
+        }
+
+        @JvmStatic
+        @Synchronized
+        fun shutdown() {
+            instance?.shutdownNow()
+            instance = null
+        }
+    }
+
+    private val executor = ScheduledThreadPoolExecutor(threads, object : ThreadFactory {
+        private val counter = AtomicInteger()
+
+        override fun newThread(r: Runnable): Thread {
+            val t = Thread(r, "LRC run monitor #${counter.incrementAndGet()}")
+            t.isDaemon = true
+            return t
+        }
+    })
+
+    private val runs: MutableSet<MonitoredRun> = ConcurrentHashMap.newKeySet()
+
+    init {
+        this.executor.removeOnCancelPolicy = true
+        this.executor.setKeepAliveTime(keepAliveMillis, TimeUnit.MILLISECONDS)
+        this.executor.allowCoreThreadTimeOut(true)
+    }
+
+    // threads currently alive
+    internal fun poolSize(): Int {
+        return this.executor.poolSize
+    }
+
+    fun register(
+        testRun: LoadTestRun,
+        loadTestRunService: LoadTestRunService,
+        apiClient: ApiClient,
+        pollingStrategy: PollingStrategy,
+        loggerProxy: LoggerProxy,
+    ): CompletableFuture<LoadTestRun> {
+        val run = MonitoredRun(testRun, loadTestRunService, apiClient, pollingStrategy, loggerProxy)
+        if (testRun.testRunCompletelyEnded()) {
+            run.future.complete(testRun)
+            return run.future
+        }
+
+        this.runs.add(run)
+        run.future.whenComplete { _, _ -> this.runs.remove(run) }
+        this.schedule(run, pollingStrategy.nextDelay(testRun))
+
+        return run.future
+    }
+
+    fun activeRuns(): Int {
+        return this.runs.size
+    }
+
+    internal fun shutdownNow() {
+        this.executor.shutdownNow()
+        this.runs.forEach { it.future.completeExceptionally(IOException("Run monitor is shut down")) }
+    }
+
+    private fun schedule(run: MonitoredRun, delay: Long) {
+        try {
+            this.executor.schedule({ this.poll(run) }, delay, TimeUnit.MILLISECONDS)
+        } catch (e: RejectedExecutionException) {
+            run.future.completeExceptionally(IOException("Run monitor is shut down", e))
+        }
+    }
+
+    private fun poll(run: MonitoredRun) {
+        if (run.future.isDone) {
+            // cancelled by the build
+            return
+        }
+
+        val delay: Long
+        try {
+            delay = this.refresh(run)
+        } catch (e: Exception) {
+            run.future.completeExceptionally(e)
+            return
+        }
+
+        if (run.testRun.testRunCompletelyEnded()) {
+            run.future.complete(run.testRun)
+        } else {
+            this.schedule(run, delay)
+        }
+    }
+
+    /**
+     * fetch the run once, return the delay before the next poll or throw when retries are exhausted.
+     */
+    private fun refresh(run: MonitoredRun): Long {
+        val maxRetry = Constants.TEST_RUN_END_MAXRETRY
+        val maxLoginRetry = Constants.TEST_RUN_END_LOGIN_MAXRETRY
+        val loggerProxy = run.loggerProxy
+
+        try {
+            run.loadTestRunService.poll(run.testRun)
+            run.retryTimes = 0
+            run.loginRetryTimes = 0
+            this.printTestRunStatus(run)
+
+            return run.pollingStrategy.nextDelay(run.testRun)
+        } catch (e: Exception) {
+            if (e.message == "Unauthorized") {
+                if (run.loginRetryTimes < maxLoginRetry) {
+                    loggerProxy.error("Authentication failed, retrying ...")
+                    run.loginRetryTimes += 1
+
+                    try {
+                        run.apiClient.login()
+                        run.apiClient.validateTenant()
+                    } catch (ee: IOException) {
+                        loggerProxy.error("Login failed: ${ee.message}")
+                    }
+
+                    return run.pollingStrategy.errorDelay(run.loginRetryTimes)
+                } else {
+                    loggerProxy.error("Login retried $maxLoginRetry times, failed.")
+                    throw e
+                }
+            }
+
+            run.retryTimes++
+            if (run.retryTimes >= maxRetry) {
+                loggerProxy.error("Retried $maxRetry times, abort")
+                throw e
+            }
+            loggerProxy.error("Failed to fetch test run status: ${e.message}")
+            loggerProxy.error("Error occurred during test running, retrying ...${run.retryTimes}/${maxRetry}")
+            this.printTestRunStatus(run)
+
+            return run.pollingStrategy.errorDelay(run.retryTimes)
+        }
+    }
+
+    private fun printTestRunStatus(run: MonitoredRun) {
+        run.loggerProxy.info("${run.testRun.statusEnum.statusName} - ${run.testRun.status}")
+    }
+}
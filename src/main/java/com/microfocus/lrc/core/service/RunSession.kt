@@ -0,0 +1,278 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.ApiClientFactory
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.Utils
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import com.microfocus.lrc.core.entity.TestRunOptions
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import com.microfocus.lrc.jenkins.LoggerOptions
+import com.microfocus.lrc.jenkins.LoggerProxy
+import java.io.Closeable
+import java.io.OutputStream
+import java.io.PrintStream
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The authenticated client and services of one build, shared by the steps of the build running in this JVM,
+ * e.g. the test run builder and the trending publisher on the same agent.
+ *
+ * Sessions are registered by build, load test and server configuration (url, tenant, credentials and proxy),
+ * so parallel branches of a pipeline running different tests get their own client, options and log.
+ * Each step attaches its own log before using the session.
+ * They are closed once released and unused, or evicted after [Constants.RUN_SESSION_IDLE_TIMEOUT] unused.
+ */
+class RunSession private constructor(
+    val serverConfiguration: ServerConfiguration,
+    val testRunOptions: TestRunOptions,
+) : Closeable {
+    /**
+     * forwards to the log of the step currently using the session.
+     */
+    private class StepLog : OutputStream() {
+        @Volatile
+        var target: PrintStream = System.out
+
+        override fun write(b: Int) {
+            this.target.write(b)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            this.target.write(b, off, len)
+        }
+
+        override fun flush() {
+            this.target.flush()
+        }
+    }
+
+    private data class SessionKey(
+        val buildId: String,
+        val testId: Int,
+        val url: String,
+        val tenantId: String?,
+        val projectId: Int,
+        val username: String?,
+        val passwordDigest: String,
+        val proxyHost: String?,
+        val proxyPort: Int,
+        val proxyUsername: String?,
+        val proxyPasswordDigest: String,
+    )
+
+    // only read and updated within the compute functions of the map
+    private class Entry(val session: RunSession) {
+        // steps currently using the session, it is never closed while in use
+        var users: Int = 0
+
+        // no later step of the build needs the session, it is closed by its last user
+        var released: Boolean = false
+
+        var lastAccess: Long = System.currentTimeMillis()
+    }
+
+    companion object {
+        private val sessions = ConcurrentHashMap<SessionKey, Entry>()
+
+        /**
+         * the session of the build, created (and authenticated) if there is none yet for the load test of
+         * [testRunOptions] and this server configuration. Each call is paired with [unbind] or [release].
+         *
+         * @param buildId identifies the build across steps, e.g. the externalizable id of the run.
+         */
+        @JvmStatic
+        fun acquire(
+            buildId: String,
+            serverConfiguration: ServerConfiguration,
+            testRunOptions: TestRunOptions,
+            logger: PrintStream
+        ): RunSession {
+            evictIdle()
+
+            val entry = sessions.compute(keyOf(buildId, testRunOptions.testId, serverConfiguration)) { _, existing ->
+                val entry = existing ?: Entry(RunSession(serverConfiguration, testRunOptions))
+                entry.users += 1
+                entry.released = false
+                entry.lastAccess = System.currentTimeMillis()
+                entry
+            }!!
+            entry.session.attachLogger(logger)
+
+            return entry.session
+        }
+
+        /**
+         * the step is done with the session, it is kept for later steps of the build.
+         */
+        @JvmStatic
+        fun unbind(buildId: String, testId: Int, serverConfiguration: ServerConfiguration) {
+            this.leave(keyOf(buildId, testId, serverConfiguration), false)
+        }
+
+        /**
+         * the step is done with the session and no later step of the build needs it,
+         * it is closed once the other steps still using it are done.
+         */
+        @JvmStatic
+        fun release(buildId: String, testId: Int, serverConfiguration: ServerConfiguration) {
+            this.leave(keyOf(buildId, testId, serverConfiguration), true)
+        }
+
+        private fun leave(key: SessionKey, release: Boolean) {
+            var closed: RunSession? = null
+            sessions.computeIfPresent(key) { _, entry ->
+                entry.users = maxOf(0, entry.users - 1)
+                entry.released = entry.released || release
+                entry.lastAccess = System.currentTimeMillis()
+                if (entry.users == 0 && entry.released) {
+                    closed = entry.session
+                    null
+                } else {
+                    entry
+                }
+            }
+            closed?.close()
+
+            // sessions of other builds may have become idle meanwhile, not only when a new one is acquired
+            evictIdle()
+        }
+
+        /**
+         * close the sessions unused since [Constants.RUN_SESSION_IDLE_TIMEOUT], e.g. of aborted builds.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun evictIdle(now: Long = System.currentTimeMillis()) {
+            val deadline = now - Constants.RUN_SESSION_IDLE_TIMEOUT
+            sessions.keys.forEach { key ->
+                var evicted: RunSession? = null
+                sessions.computeIfPresent(key) { _, entry ->
+                    if (entry.users == 0 && entry.lastAccess < deadline) {
+                        evicted = entry.session
+                        null
+                    } else {
+                        entry
+                    }
+                }
+                evicted?.close()
+            }
+        }
+
+        @JvmStatic
+        fun clear() {
+            sessions.keys.forEach { key -> sessions.remove(key)?.session?.close() }
+        }
+
+        private fun keyOf(buildId: String, testId: Int, serverConfiguration: ServerConfiguration): SessionKey {
+            val proxyConfiguration = serverConfiguration.proxyConfiguration
+            val proxyPasswordDigest = if (proxyConfiguration?.username != null) {
+                Utils.sha256Hex(proxyConfiguration.password)
+            } else {
+                ""
+            }
+
+            return SessionKey(
+                buildId,
+                testId,
+                serverConfiguration.url,
+                serverConfiguration.tenantId,
+                serverConfiguration.projectId,
+                serverConfiguration.username,
+                Utils.sha256Hex(serverConfiguration.password),
+                proxyConfiguration?.host,
+                proxyConfiguration?.port ?: -1,
+                proxyConfiguration?.username,
+                proxyPasswordDigest
+            )
+        }
+
+        /**
+         * a session not registered for any build, closed by the caller.
+         */
+        @JvmStatic
+        fun create(
+            serverConfiguration: ServerConfiguration,
+            testRunOptions: TestRunOptions,
+            logger: PrintStream
+        ): RunSession {
+            val session = RunSession(serverConfiguration, testRunOptions)
+            session.attachLogger(logger)
+
+            return session
+        }
+    }
+
+    private val stepLog = StepLog()
+    private val logger = PrintStream(this.stepLog, true, "UTF-8")
+
+    private fun loggerProxy(moduleName: String): LoggerProxy {
+        return LoggerProxy(this.logger, LoggerOptions(this.testRunOptions.isDebug, moduleName))
+    }
+
+    private val apiClientHolder = lazy {
+        ApiClientFactory.getClient(this.serverConfiguration, this.loggerProxy("ApiClient"))
+    }
+
+    val apiClient: ApiClient by this.apiClientHolder
+
+    val loadTestService: LoadTestService by lazy {
+        LoadTestService(this.apiClient, this.loggerProxy("LoadTestService"))
+    }
+
+    val loadTestRunService: LoadTestRunService by lazy {
+        LoadTestRunService(this.apiClient, this.loggerProxy("LoadTestRunService"))
+    }
+
+    val reportDownloader: ReportDownloader by lazy {
+        ReportDownloader(this.apiClient, this.loggerProxy("ReportDownloader"), this.testRunOptions)
+    }
+
+    fun attachLogger(logger: PrintStream) {
+        this.stepLog.target = logger
+    }
+
+    /**
+     * trending data of an ended run, with the benchmark run's if any.
+     *
+     * @param cachedBenchmark trending data of the benchmark run fetched earlier, used instead of fetching it again.
+     */
+    @JvmOverloads
+    fun fetchTrending(
+        testRun: LoadTestRun,
+        benchmark: Int?,
+        cachedBenchmark: TrendingDataWrapper? = null
+    ): TrendingDataWrapper {
+        var benchmarkTrending: TrendingDataWrapper? = null
+        if (benchmark != null && cachedBenchmark?.trendingData?.runId == benchmark) {
+            this.loggerProxy("RunSession").info("Using cached trending data of benchmark run #$benchmark.")
+            benchmarkTrending = cachedBenchmark
+        } else if (benchmark != null) {
+            val benchmarkRun = this.loadTestRunService.fetch(benchmark.toString())
+            if (benchmarkRun != null) {
+                benchmarkTrending = this.reportDownloader.fetchTrending(benchmarkRun, null)
+            }
+        }
+
+        return this.reportDownloader.fetchTrending(testRun, benchmarkTrending)
+    }
+
+    override fun close() {
+        if (this.apiClientHolder.isInitialized()) {
+            this.apiClient.close()
+        }
+    }
+}
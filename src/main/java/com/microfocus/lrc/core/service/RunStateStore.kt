@@ -0,0 +1,80 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.google.gson.Gson
+import java.io.File
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+class RunState(
+    val runId: Int,
+    val testId: Int,
+    val projectId: Int,
+    val tenantId: String?,
+    val startedAt: Long = System.currentTimeMillis()
+)
+
+/**
+ * persists the ID of a started test run next to the build's workspace,
+ * so a build executed after a controller or agent restart re-attaches to the run instead of starting a new one.
+ * The state is deleted once the build is done with the run, it is kept only when the build is interrupted.
+ */
+class RunStateStore(private val file: File) {
+    companion object {
+        @JvmStatic
+        fun fileName(testId: Int): String {
+            return "lrc_run_state_$testId.json"
+        }
+    }
+
+    fun load(): RunState? {
+        if (!this.file.isFile) {
+            return null
+        }
+
+        return try {
+            this.file.reader(Charsets.UTF_8).use { Gson().fromJson(it, RunState::class.java) }
+        } catch (e: Exception) {
+            // corrupted or partially written, ignore it
+            null
+        }
+    }
+
+    @kotlin.jvm.Throws(IOException::class)
+    fun save(state: RunState) {
+        val tmp = File(this.file.parentFile, "${this.file.name}.tmp")
+        tmp.parentFile?.mkdirs()
+        tmp.writeText(Gson().toJson(state), Charsets.UTF_8)
+        try {
+            Files.move(
+                tmp.toPath(),
+                this.file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            )
+        } catch (e: AtomicMoveNotSupportedException) {
+            Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+
+    fun delete() {
+        try {
+            Files.deleteIfExists(this.file.toPath())
+        } catch (e: IOException) {
+            // a stale state is ignored by the next build, its run has ended or is too old
+        }
+    }
+}
@@ -12,20 +12,29 @@
 
 package com.microfocus.lrc.core.service
 
-import com.microfocus.lrc.core.ApiClientFactory
 import com.microfocus.lrc.core.Constants
 import com.microfocus.lrc.core.entity.*
 import com.microfocus.lrc.jenkins.LoggerOptions
 import com.microfocus.lrc.jenkins.LoggerProxy
 import java.io.Closeable
+import java.io.File
 import java.io.IOException
+import java.io.InterruptedIOException
 import java.io.PrintStream
 import java.io.Serializable
+import java.nio.file.Files
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
 
-class Runner(
+/**
+ * @param sessionId the build, to share its [RunSession] with later steps of the build running the same test.
+ * without it, the runner has a session of its own.
+ */
+class Runner @JvmOverloads constructor(
     private val serverConfiguration: ServerConfiguration,
     @Transient private val logger: PrintStream = System.out,
-    private val testRunOptions: TestRunOptions
+    private val testRunOptions: TestRunOptions,
+    private val sessionId: String? = null
 ) : Serializable, Closeable {
 
     companion object {
@@ -39,35 +48,103 @@ class Runner(
     )
 
     @Transient
-    private val apiClient = ApiClientFactory.getClient(
-        this.serverConfiguration,
-        LoggerProxy(this.logger, LoggerOptions(this.testRunOptions.isDebug, "ApiClient"))
-    )
+    private val session: RunSession = if (this.sessionId != null) {
+        RunSession.acquire(this.sessionId, this.serverConfiguration, this.testRunOptions, this.logger)
+    } else {
+        RunSession.create(this.serverConfiguration, this.testRunOptions, this.logger)
+    }
 
-    @Transient
-    private val loadTestService = LoadTestService(
-        this.apiClient,
-        LoggerProxy(this.logger, LoggerOptions(this.testRunOptions.isDebug, "LoadTestService"))
-    )
+    private val apiClient
+        get() = this.session.apiClient
 
-    @Transient
-    private val loadTestRunService = LoadTestRunService(
-        this.apiClient,
-        LoggerProxy(this.logger, LoggerOptions(this.testRunOptions.isDebug, "LoadTestRunService"))
-    )
+    private val loadTestService
+        get() = this.session.loadTestService
 
-    @Transient
-    private val reportDownloader = ReportDownloader(
-        this.apiClient,
-        LoggerProxy(this.logger, LoggerOptions(this.testRunOptions.isDebug, "ReportDownloader")),
-        this.testRunOptions
-    )
+    private val loadTestRunService
+        get() = this.session.loadTestRunService
+
+    private val reportDownloader
+        get() = this.session.reportDownloader
 
     var testRun: LoadTestRun? = null
         private set
 
+    /**
+     * where report files are saved, a temporary directory if not set.
+     */
+    @Transient
+    var reportDir: File? = null
+
+    /**
+     * where the started run is persisted, to re-attach to it after a restart.
+     */
+    @Transient
+    var stateStore: RunStateStore? = null
+
     @kotlin.jvm.Throws(IOException::class, InterruptedException::class)
     fun run(): LoadTestRun {
+        // the state is kept only when the controller or the agent is interrupted, e.g. shut down for a restart
+        var interrupted = false
+        try {
+            val testRun = this.resume() ?: this.start()
+            this.waitingForTestRunToEnd(testRun)
+
+            return this.finish(testRun)
+        } catch (e: InterruptedException) {
+            interrupted = true
+            throw e
+        } catch (e: InterruptedIOException) {
+            interrupted = true
+            throw e
+        } catch (e: IOException) {
+            interrupted = Thread.currentThread().isInterrupted
+            throw e
+        } finally {
+            if (!interrupted) {
+                this.stateStore?.delete()
+            }
+        }
+    }
+
+    private fun resume(): LoadTestRun? {
+        val store = this.stateStore ?: return null
+        val state = store.load() ?: return null
+        if (state.testId != this.testRunOptions.testId ||
+            state.projectId != this.serverConfiguration.projectId ||
+            state.tenantId != this.serverConfiguration.tenantId
+        ) {
+            store.delete()
+            return null
+        }
+        if (System.currentTimeMillis() - state.startedAt > Constants.RUN_STATE_MAX_AGE) {
+            this.loggerProxy.info("Ignoring test run #${state.runId} started too long ago.")
+            store.delete()
+            return null
+        }
+
+        val testRun = try {
+            this.loadTestRunService.fetch(state.runId.toString())
+        } catch (e: IOException) {
+            this.loggerProxy.error("Failed to resume test run #${state.runId}: ${e.message}")
+            null
+        }
+        if (testRun == null || testRun.statusEnum.isEnded) {
+            this.loggerProxy.info("Test run #${state.runId} is not running anymore, starting a new run.")
+            store.delete()
+            return null
+        }
+
+        this.loggerProxy.info("Found unfinished test run #${state.runId}, resuming it instead of starting a new run.")
+        this.testRun = testRun
+
+        return testRun
+    }
+
+    /**
+     * start the load test and return the new run without waiting for it to end.
+     */
+    @kotlin.jvm.Throws(IOException::class)
+    fun start(): LoadTestRun {
         this.loggerProxy.info("Fetching load test #${this.testRunOptions.testId} ...")
 
         val lt = this.loadTestService.fetch(this.testRunOptions.testId)
@@ -77,80 +154,94 @@ class Runner(
         this.loggerProxy.info("Test run #${runId} started.")
         val testRun = LoadTestRun(runId, lt)
         this.testRun = testRun
-        this.waitingForTestRunToEnd(testRun)
-        this.loggerProxy.info("Test run #${runId} ended with ${testRun.statusEnum.statusName} status.")
+
+        try {
+            this.stateStore?.save(
+                RunState(runId, lt.id, this.serverConfiguration.projectId, this.serverConfiguration.tenantId)
+            )
+        } catch (e: IOException) {
+            this.loggerProxy.error("Failed to persist test run #${runId}: ${e.message}")
+        }
+
+        return testRun
+    }
+
+    /**
+     * re-attach to a run started earlier, e.g. after a controller restart.
+     */
+    @kotlin.jvm.Throws(IOException::class)
+    fun attach(runId: Int): LoadTestRun {
+        val testRun = this.loadTestRunService.fetch(runId.toString())
+            ?: throw IOException("Failed to fetch test run #$runId")
+        this.loggerProxy.info("Resumed monitoring test run #${runId}.")
+        this.testRun = testRun
+
+        return testRun
+    }
+
+    /**
+     * poll the run from the shared [RunMonitor], the future completes once the run has completely ended.
+     */
+    fun monitor(testRun: LoadTestRun): CompletableFuture<LoadTestRun> {
+        return RunMonitor.getInstance().register(
+            testRun,
+            this.loadTestRunService,
+            this.apiClient,
+            PollingStrategy.forOptions(this.testRunOptions.isTestMode),
+            this.loggerProxy
+        )
+    }
+
+    /**
+     * collect results and reports of an ended run, all report files are written into [reportDir].
+     */
+    @kotlin.jvm.Throws(IOException::class, InterruptedException::class)
+    fun finish(testRun: LoadTestRun): LoadTestRun {
+        this.loggerProxy.info("Test run #${testRun.id} ended with ${testRun.statusEnum.statusName} status.")
 
         this.loadTestRunService.fetchStatus(testRun)
+        val dir = this.reportDir ?: Files.createTempDirectory("lrc-reports").toFile().also { this.reportDir = it }
         if (testRun.hasReport) {
             testRun.transactions = this.loadTestRunService.getTransactions(testRun.id)
 
-            this.reportDownloader.genTxCsv(testRun)
-            this.reportDownloader.genXmlFile(testRun)
-            this.reportDownloader.download(testRun, arrayOf("csv", "pdf"))
+            this.reportDownloader.genTxCsv(testRun, dir)
+            this.reportDownloader.genXmlFile(testRun, dir)
+            this.reportDownloader.download(testRun, arrayOf("csv", "pdf"), dir)
         } else {
             this.loggerProxy.info("Test run #${testRun.id} doesn\'t have run results.")
-            this.reportDownloader.genXmlFile(testRun)
+            this.reportDownloader.genXmlFile(testRun, dir)
         }
 
         return testRun
     }
 
-    @SuppressWarnings("kotlin:S3776")
+    /**
+     * the `lrcRunTest` build step cannot return before its run has ended, so its thread (and executor) waits here.
+     * the polling itself is done by the shared [RunMonitor], `lrcRunTestAsync` releases the executor instead.
+     */
     private fun waitingForTestRunToEnd(testRun: LoadTestRun) {
-        // refresh test run status
-        // print status
-        // if test run not end, repeat the loop
-        val maxRetry = Constants.TEST_RUN_END_MAXRETRY
-        val maxLoginRetry = Constants.TEST_RUN_END_LOGIN_MAXRETRY
-
-        var retryTimes = 0
-        var loginRetryTimes = 0
-
-        val pollingInterval = if (testRunOptions.isTestMode) 100 else Constants.TEST_RUN_END_POLLING_INTERVAL
-
-        while (!testRun.testRunCompletelyEnded()) {
-            Thread.sleep(pollingInterval)
-            try {
-                this.loadTestRunService.fetch(testRun)
-                retryTimes = 0
-                loginRetryTimes = 0
-            } catch (e: Exception) {
-                if (e.message == "Unauthorized") {
-                    if (loginRetryTimes < maxLoginRetry) {
-                        this.loggerProxy.error("Authentication failed, retrying ...")
-                        loginRetryTimes += 1
-
-                        try {
-                            this.apiClient.login()
-                            this.apiClient.validateTenant()
-                        } catch (ee: IOException) {
-                            this.loggerProxy.error("Login failed: ${ee.message}")
-                        }
-                        continue
-                    } else {
-                        this.loggerProxy.error("Login retried $maxLoginRetry times, failed.")
-                        throw e
-                    }
-                }
-
-                retryTimes++
-                if (retryTimes >= maxRetry) {
-                    this.loggerProxy.error("Retried $maxRetry times, abort")
-                    throw e
-                }
-                this.loggerProxy.error("Failed to fetch test run status: ${e.message}")
-                this.loggerProxy.error("Error occurred during test running, retrying ...${retryTimes}/${maxRetry}")
+        val future = this.monitor(testRun)
+
+        try {
+            future.get()
+        } catch (e: InterruptedException) {
+            future.cancel(true)
+            throw e
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            if (cause is Exception) {
+                throw cause
             }
-            this.printTestRunStatus(testRun)
+            throw e
         }
     }
 
-    private fun printTestRunStatus(testRun: LoadTestRun) {
-        this.loggerProxy.info("${testRun.statusEnum.statusName} - ${testRun.status}")
-    }
-
     override fun close() {
-        this.apiClient.close()
+        if (this.sessionId != null) {
+            RunSession.unbind(this.sessionId, this.testRunOptions.testId, this.serverConfiguration)
+        } else {
+            this.session.close()
+        }
     }
 
     fun interruptHandler(): String {
@@ -164,19 +255,20 @@ class Runner(
         this.loggerProxy.info("Aborting test run #${testRun.id} ...")
         this.loadTestRunService.abort(testRun)
         this.testRun = testRun
+        this.stateStore?.delete()
 
         return TestRunStatus.ABORTED.statusName
     }
 
-    fun fetchTrending(testRun: LoadTestRun, benchmark: Int?): TrendingDataWrapper {
-        var benchmarkTrending: TrendingDataWrapper? = null
-        if (benchmark != null) {
-            val benchmarkRun = this.loadTestRunService.fetch(benchmark.toString())
-            if (benchmarkRun != null) {
-                benchmarkTrending = this.reportDownloader.fetchTrending(benchmarkRun, null)
-            }
-        }
-
-        return this.reportDownloader.fetchTrending(testRun, benchmarkTrending)
+    /**
+     * @param cachedBenchmark trending data of the benchmark run fetched earlier, used instead of fetching it again.
+     */
+    @JvmOverloads
+    fun fetchTrending(
+        testRun: LoadTestRun,
+        benchmark: Int?,
+        cachedBenchmark: TrendingDataWrapper? = null
+    ): TrendingDataWrapper {
+        return this.session.fetchTrending(testRun, benchmark, cachedBenchmark)
     }
 }
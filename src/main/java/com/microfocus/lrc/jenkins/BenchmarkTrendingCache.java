@@ -0,0 +1,112 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.microfocus.lrc.core.entity.TestRunStatus;
+import com.microfocus.lrc.core.entity.TrendingDataWrapper;
+import hudson.model.Job;
+import hudson.util.AtomicFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+
+/**
+ * Trending data of benchmark runs, stored once under the job directory.
+ * A benchmark run does not change after it ended, so later builds reuse it instead of fetching it again.
+ */
+final class BenchmarkTrendingCache {
+
+    private final File dir;
+
+    BenchmarkTrendingCache(final Job<?, ?> job) {
+        this.dir = job.getRootDir();
+    }
+
+    BenchmarkTrendingCache(final File dir) {
+        this.dir = dir;
+    }
+
+    File fileOf(final String tenantId, final int runId) {
+        String tenant = tenantId != null ? tenantId.replaceAll("[^A-Za-z0-9_-]", "_") : "";
+        return new File(this.dir, "lrc_benchmark_" + tenant + "_" + runId + ".json");
+    }
+
+    /**
+     * @return the cached trending data of the run, null if it is not cached or cannot be read.
+     */
+    TrendingDataWrapper load(final String tenantId, final int runId) {
+        File file = this.fileOf(tenantId, runId);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            TrendingDataWrapper cached = new Gson().fromJson(reader, TrendingDataWrapper.class);
+            if (cached == null || cached.getTrendingData() == null
+                    || cached.getTrendingData().getRunId() != runId) {
+                return null;
+            }
+
+            return cached;
+        } catch (IOException | JsonParseException e) {
+            LoggerProxy.getSysLogger().log(Level.WARNING, "Failed to read " + file + ", ignored.", e);
+            return null;
+        }
+    }
+
+    /**
+     * store the trending data of a benchmark run, only once the run has ended.
+     *
+     * @return whether the data was stored.
+     */
+    boolean save(final TrendingDataWrapper benchmark) {
+        TrendingDataWrapper.TrendingData data = benchmark.getTrendingData();
+        if (data == null || !isEnded(data.getStatus())) {
+            return false;
+        }
+
+        File file = this.fileOf(benchmark.getTenantId(), data.getRunId());
+        try {
+            AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                new Gson().toJson(benchmark, writer);
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+
+            return true;
+        } catch (IOException e) {
+            LoggerProxy.getSysLogger().log(Level.WARNING, "Failed to write " + file, e);
+            return false;
+        }
+    }
+
+    private static boolean isEnded(final String status) {
+        if (status == null) {
+            return false;
+        }
+
+        try {
+            return TestRunStatus.valueOf(status).isEnded();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
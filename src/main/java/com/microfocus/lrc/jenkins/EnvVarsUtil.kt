@@ -20,7 +20,7 @@ import java.util.logging.Level
 class EnvVarsUtil {
     companion object {
         @JvmStatic
-        fun getEnvVar(build: Run<*, *>, launcher: Launcher, key: String): String? {
+        fun getEnvVar(build: Run<*, *>, launcher: Launcher?, key: String): String? {
             // getAction(Class<T> type) is not deprecated
             @SuppressWarnings("kotlin:S1874")
             val action = build.getAction(ParametersAction::class.java)
@@ -42,8 +42,12 @@ class EnvVarsUtil {
                     }
                 }
 
-                //or try the system env var
-                EnvVars.getRemote(launcher.channel)[key]
+                //or try the system env var, of the controller if the step is not bound to a node
+                if (launcher != null) {
+                    EnvVars.getRemote(launcher.channel)[key]
+                } else {
+                    EnvVars.masterEnvVars[key]
+                }
             } catch (e: Exception) {
                 LoggerProxy.sysLogger.log(Level.WARNING, "Failed to get parameters / env variables, " + e.message)
                 null
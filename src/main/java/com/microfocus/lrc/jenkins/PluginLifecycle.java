@@ -0,0 +1,33 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.microfocus.lrc.core.HttpClientRegistry;
+import com.microfocus.lrc.core.service.RunMonitor;
+import hudson.init.Terminator;
+
+public final class PluginLifecycle {
+    private PluginLifecycle() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    @Terminator
+    public static void shutdown() {
+        TestRunAsyncStep.shutdown();
+        RunMonitor.shutdown();
+        HttpClientRegistry.shutdown();
+        TrendingStore.shutdown();
+        TrendingIndex.clear();
+        TrendingStore.clear();
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.microfocus.lrc.core.Constants;
+import com.microfocus.lrc.core.entity.LoadTestRun;
+import com.microfocus.lrc.core.service.Runner;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline step running a test in LoadRunner Cloud without holding an executor.
+ * The run is started and then polled by the shared run monitor, the build resumes when the run has ended.
+ * The run ID is persisted with the step, so monitoring continues after a controller restart.
+ * Outside of {@code node} there is no workspace, the report files are not saved.
+ */
+public final class TestRunAsyncStep extends Step {
+
+    // starting, finishing and aborting runs block on HTTP calls and report downloads
+    private static ExecutorService executor;
+
+    private final String projectId;
+    private final String testId;
+    private boolean sendEmail;
+
+    @DataBoundConstructor
+    public TestRunAsyncStep(
+            final @NonNull String projectId,
+            final @NonNull String testId
+    ) {
+        this.projectId = projectId.trim();
+        this.testId = testId.trim();
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    public boolean isSendEmail() {
+        return sendEmail;
+    }
+
+    @DataBoundSetter
+    public void setSendEmail(final boolean sendEmail) {
+        this.sendEmail = sendEmail;
+    }
+
+    @Override
+    public StepExecution start(final StepContext context) {
+        return new Execution(context, this.projectId, this.testId, this.sendEmail);
+    }
+
+    static synchronized ExecutorService executor() {
+        if (executor == null || executor.isShutdown()) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    Constants.ASYNC_STEP_THREADS,
+                    Constants.ASYNC_STEP_THREADS,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "LRC async test run")
+            );
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+
+        return executor;
+    }
+
+    static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            // FilePath and Launcher are optional, see Execution#start()
+            return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "lrcRunTestAsync";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Run test in LoadRunner Cloud without holding an executor";
+        }
+    }
+
+    static final class Execution extends StepExecution {
+        private static final long serialVersionUID = 1L;
+
+        private final String projectId;
+        private final String testId;
+        private final boolean sendEmail;
+        private volatile int runId = -1;
+
+        private transient volatile Runner runner;
+        private transient volatile CompletableFuture<LoadTestRun> monitoring;
+
+        Execution(
+                final StepContext context,
+                final String projectId,
+                final String testId,
+                final boolean sendEmail
+        ) {
+            super(context);
+            this.projectId = projectId;
+            this.testId = testId;
+            this.sendEmail = sendEmail;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            TestRunBuilder builder = new TestRunBuilder(this.projectId, this.testId, this.sendEmail);
+            TestRunBuilder.RunSetup setup = this.prepare(builder);
+            if (setup == null) {
+                getContext().onFailure(new AbortException("Invalid LoadRunner Cloud configuration."));
+                return true;
+            }
+            if (getContext().get(FilePath.class) == null) {
+                getContext().get(TaskListener.class).getLogger().println(
+                        "[WARNING] lrcRunTestAsync is used outside of a node block, "
+                                + "report files will not be saved to a workspace."
+                );
+            }
+
+            executor().submit(() -> this.startRun(builder, setup));
+            return false;
+        }
+
+        @Override
+        public void onResume() {
+            if (this.runId < 0) {
+                getContext().onFailure(
+                        new AbortException("Jenkins restarted before the LoadRunner Cloud test run was started.")
+                );
+                return;
+            }
+
+            executor().submit(() -> {
+                try {
+                    TestRunBuilder builder = new TestRunBuilder(this.projectId, this.testId, this.sendEmail);
+                    TestRunBuilder.RunSetup setup = this.prepare(builder);
+                    if (setup == null) {
+                        throw new AbortException("Invalid LoadRunner Cloud configuration.");
+                    }
+
+                    Runner r = this.createRunner(setup);
+                    this.monitor(builder, setup, r, r.attach(this.runId));
+                } catch (Exception e) {
+                    getContext().onFailure(e);
+                }
+            });
+        }
+
+        @Override
+        public void stop(@NonNull final Throwable cause) throws Exception {
+            CompletableFuture<LoadTestRun> f = this.monitoring;
+            if (f != null) {
+                f.cancel(true);
+            }
+
+            Runner r = this.runner;
+            if (r != null) {
+                executor().submit(() -> {
+                    try {
+                        r.interruptHandler();
+                    } catch (Exception e) {
+                        LoggerProxy.getSysLogger().warning("Failed to abort test run: " + e.getMessage());
+                    } finally {
+                        r.close();
+                    }
+                });
+            }
+
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public String getStatus() {
+            if (this.runId < 0) {
+                return "starting LoadRunner Cloud test run";
+            }
+
+            return "waiting for LoadRunner Cloud test run #" + this.runId;
+        }
+
+        private TestRunBuilder.RunSetup prepare(final TestRunBuilder builder) throws IOException, InterruptedException {
+            EnvVars env = getContext().get(EnvVars.class);
+            return builder.prepare(
+                    getContext().get(Run.class),
+                    env != null ? env : new EnvVars(),
+                    getContext().get(Launcher.class),
+                    getContext().get(TaskListener.class)
+            );
+        }
+
+        private Runner createRunner(final TestRunBuilder.RunSetup setup) throws IOException, InterruptedException {
+            Runner r = new Runner(
+                    setup.getServerConfiguration(),
+                    getContext().get(TaskListener.class).getLogger(),
+                    setup.getOptions(),
+                    getContext().get(Run.class).getExternalizableId()
+            );
+            // the run is monitored on the controller, reports are downloaded there first,
+            // into a temporary directory created by Runner#finish and deleted in complete()
+            this.runner = r;
+
+            return r;
+        }
+
+        private void startRun(final TestRunBuilder builder, final TestRunBuilder.RunSetup setup) {
+            try {
+                Runner r = this.createRunner(setup);
+                LoadTestRun testRun = r.start();
+                this.runId = testRun.getId();
+                getContext().saveState();
+
+                this.monitor(builder, setup, r, testRun);
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+
+        private void monitor(
+                final TestRunBuilder builder,
+                final TestRunBuilder.RunSetup setup,
+                final Runner r,
+                final LoadTestRun testRun
+        ) {
+            CompletableFuture<LoadTestRun> f = r.monitor(testRun);
+            this.monitoring = f;
+            f.whenComplete((ended, ex) -> {
+                if (ex instanceof CancellationException) {
+                    // stopped, the context is completed by stop()
+                    return;
+                }
+                Jenkins jenkins = Jenkins.getInstanceOrNull();
+                if (ex != null && (jenkins == null || jenkins.isTerminating())) {
+                    // the monitor is shut down with the controller, monitoring continues in onResume()
+                    r.close();
+                    return;
+                }
+
+                executor().submit(() -> this.complete(builder, setup, r, testRun, ex));
+            });
+        }
+
+        private void complete(
+                final TestRunBuilder builder,
+                final TestRunBuilder.RunSetup setup,
+                final Runner r,
+                final LoadTestRun testRun,
+                final Throwable monitorError
+        ) {
+            try {
+                if (monitorError != null) {
+                    getContext().onFailure(monitorError);
+                    return;
+                }
+
+                LoadTestRun result = r.finish(testRun);
+                File reportDir = r.getReportDir();
+                builder.publishResult(
+                        getContext().get(Run.class),
+                        getContext().get(FilePath.class),
+                        setup,
+                        result,
+                        reportDir != null ? new FilePath(reportDir) : null
+                );
+                getContext().onSuccess(result.getStatusEnum().getStatusName());
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            } finally {
+                // publishResult() deletes it once the reports are moved, not when there is no result to publish
+                this.deleteReportDir(r.getReportDir());
+                r.close();
+            }
+        }
+
+        private void deleteReportDir(final File reportDir) {
+            if (reportDir == null || !reportDir.exists()) {
+                return;
+            }
+
+            try {
+                Util.deleteRecursive(reportDir);
+            } catch (IOException e) {
+                LoggerProxy.getSysLogger().warning("Failed to delete " + reportDir + ": " + e.getMessage());
+            }
+        }
+    }
+}
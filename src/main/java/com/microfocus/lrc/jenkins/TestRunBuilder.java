@@ -20,6 +20,7 @@ import com.microfocus.lrc.core.Constants;
 import com.microfocus.lrc.core.Utils;
 import com.microfocus.lrc.core.entity.ProxyConfiguration;
 import com.microfocus.lrc.core.entity.*;
+import com.microfocus.lrc.core.service.RunStateStore;
 import com.microfocus.lrc.core.service.Runner;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.*;
@@ -42,9 +43,8 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.verb.POST;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -187,7 +187,6 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
         return true;
     }
 
-    @SuppressWarnings("java:S3776")
     @Override
     public void perform(
             final @NonNull Run<?, ?> run,
@@ -196,12 +195,60 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
             final @NonNull Launcher launcher,
             final @NonNull TaskListener listener
     ) throws InterruptedException, IOException {
+        RunSetup setup = this.prepare(run, env, launcher, listener);
+        if (setup == null) {
+            run.setResult(Result.FAILURE);
+            return;
+        }
+
+        if (!(run instanceof AbstractBuild)) {
+            this.loggerProxy.info(
+                    "lrcRunTest holds this executor until the test run ends, use lrcRunTestAsync to release it."
+            );
+        }
+
+        // reports are downloaded by the callable on the node of the workspace, straight into the workspace
+        RunTestCallable callable = new RunTestCallable(
+                listener,
+                setup.getServerConfiguration(),
+                setup.getOptions(),
+                workspace.getRemote(),
+                run.getExternalizableId()
+        );
+
+        LoadTestRun testRun = null;
+
+        try {
+            VirtualChannel channel = launcher.getChannel();
+            if (channel != null) {
+                testRun = channel.call(callable);
+            }
+        } catch (InterruptedException e) {
+            loggerProxy.info("Test run interrupted");
+            throw e;
+        } catch (Exception e) {
+            Utils.logException(loggerProxy, "Exception occurred. ", e);
+        }
+
+        this.publishResult(run, workspace, setup, testRun, workspace);
+    }
+
+    /**
+     * validate the job and system configuration and resolve them for this build.
+     *
+     * @return the resolved configuration, or null if it is invalid (errors are logged).
+     */
+    RunSetup prepare(
+            final @NonNull Run<?, ?> run,
+            final @NonNull EnvVars env,
+            final Launcher launcher,
+            final @NonNull TaskListener listener
+    ) {
         PrintStream logger = listener.getLogger();
         this.loggerProxy = new LoggerProxy(logger, new LoggerOptions(false, ""));
 
         if (!validateJobParameters()) {
-            run.setResult(Result.FAILURE);
-            return;
+            return null;
         }
 
         printEnvInfo(env);
@@ -212,13 +259,11 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
                     "Failed to read configuration of LoadRunner Cloud plugin. "
                             + "Please check configuration and try again."
             );
-            run.setResult(Result.FAILURE);
-            return;
+            return null;
         }
 
         if (!validateSystemParameters(descriptor)) {
-            run.setResult(Result.FAILURE);
-            return;
+            return null;
         }
 
         ServerConfiguration serverConfiguration = createServerConfiguration(descriptor, run, launcher);
@@ -250,75 +295,74 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
                 Boolean.parseBoolean(envVarsObj.get(BooleanOptionInEnvVars.LRC_TEST_MODE.name()))
         );
 
-        RunTestCallable callable = new RunTestCallable(
-                listener,
-                serverConfiguration,
-                opt
-        );
-
-        LoadTestRun testRun = null;
-
-        try {
-            VirtualChannel channel = launcher.getChannel();
-            if (channel != null) {
-                testRun = channel.call(callable);
-            }
-        } catch (InterruptedException e) {
-            loggerProxy.info("Test run interrupted");
-            throw e;
-        } catch (Exception e) {
-            Utils.logException(loggerProxy, "Exception occurred. ", e);
-        }
+        return new RunSetup(serverConfiguration, opt);
+    }
 
+    /**
+     * move the reports of an ended run into the workspace, export LRC_RUN_ID and set the build result.
+     *
+     * @param workspace may be null when the run was not bound to a node, then no report file is kept.
+     * @param reportDir where the reports were downloaded, deleted afterwards unless it is the workspace.
+     */
+    @SuppressWarnings("java:S3776")
+    void publishResult(
+            final @NonNull Run<?, ?> run,
+            final FilePath workspace,
+            final @NonNull RunSetup setup,
+            final LoadTestRun testRun,
+            final FilePath reportDir
+    ) throws InterruptedException, IOException {
         if (testRun == null) {
             this.loggerProxy.info("Test run failed.");
             run.setResult(Result.FAILURE);
+            this.deleteReportDir(reportDir, workspace);
             return;
         }
 
-        ApiClient apiClient = ApiClientFactory.getClient(serverConfiguration, new LoggerProxy());
-        LoadTestRun finalTestRun = testRun;
-        testRun.getReports().forEach((fileName, content) -> {
-            FilePath file = workspace.child(fileName);
-            try {
-                InputStream reportStream = apiClient.getReport(finalTestRun.getReports().get(fileName));
-                if (reportStream != null) {
-                    file.copyFrom(reportStream);
-                    reportStream.close();
-                    this.loggerProxy.info("Report file " + file.getRemote() + " created.");
-                } else {
-                    this.loggerProxy.info("Report data for " + file.getRemote() + " is not available.");
+        if (workspace != null) {
+            for (ReportFile report : testRun.getReportFiles().values()) {
+                FilePath file = workspace.child(report.getName());
+                try {
+                    FilePath downloaded = reportDir != null ? reportDir.child(report.getName()) : null;
+                    if (downloaded == null || !downloaded.exists()) {
+                        this.loggerProxy.info("Report data for " + file.getRemote() + " is not available.");
+                        continue;
+                    }
+
+                    if (!downloaded.equals(file)) {
+                        if (downloaded.getChannel() == file.getChannel()) {
+                            // same node, no data transfer
+                            file.delete();
+                            downloaded.renameTo(file);
+                        } else {
+                            file.copyFrom(downloaded);
+                        }
+                    }
+                    this.loggerProxy.info(
+                            "Report file " + file.getRemote() + " created ("
+                                    + report.getSize() + " bytes, sha256 " + report.getSha256() + ")."
+                    );
+                } catch (InterruptedException e) {
+                    this.loggerProxy.error("Interrupted. Failed to create report file " + file.getRemote());
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    this.loggerProxy.error("Failed to create report file " + file.getRemote());
                 }
-            } catch (InterruptedException e) {
-                this.loggerProxy.error("Interrupted. Failed to create report file " + file.getRemote());
-                Thread.currentThread().interrupt();
-            } catch (Exception e) {
-                this.loggerProxy.error("Failed to create report file " + file.getRemote());
             }
-        });
-
-        testRun.getReportsByteArray().forEach((fileName, content) -> {
-            FilePath file = workspace.child(fileName);
-            try (OutputStream out = file.write()) {
-                out.write(content);
-                this.loggerProxy.info("Report file " + file.getRemote() + " created.");
-            } catch (IOException e) {
-                this.loggerProxy.error("Failed to create report file " + file.getRemote());
-            } catch (InterruptedException e) {
-                this.loggerProxy.error("Interrupted. Failed to create report file " + file.getRemote());
-                Thread.currentThread().interrupt();
-            }
-        });
+        } else {
+            this.loggerProxy.info("No workspace available, report files are not saved.");
+        }
+        this.deleteReportDir(reportDir, workspace);
 
         // output vars to jenkins env
         EnvVarsUtil.putEnvVar(run, "LRC_RUN_ID", String.valueOf(testRun.getId()));
 
-        if (testRun.getHasReport()) {
+        if (testRun.getHasReport() && workspace != null) {
             // remove reports data to write a smaller json
             testRun.getReports().clear();
-            testRun.getReportsByteArray().clear();
+            testRun.getReportFiles().clear();
             JsonObject buildResult = new JsonObject();
-            buildResult.addProperty("testOptions", new Gson().toJson(opt));
+            buildResult.addProperty("testOptions", new Gson().toJson(setup.getOptions()));
             buildResult.addProperty("testRun", new Gson().toJson(testRun));
 
             workspace.child(String.format("lrc_run_result_%s", run.getId())).write(buildResult.toString(), "UTF-8");
@@ -331,6 +375,20 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
+    private void deleteReportDir(final FilePath reportDir, final FilePath workspace) {
+        if (reportDir == null || reportDir.equals(workspace)) {
+            return;
+        }
+
+        try {
+            reportDir.deleteRecursive();
+        } catch (IOException e) {
+            this.loggerProxy.debug("Failed to delete " + reportDir.getRemote() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private Map<String, String> readBoolConfigFromEnvVars(final Run<?, ?> run, final Launcher launcher) {
         Map<String, String> map = new HashMap<>();
         for (BooleanOptionInEnvVars key : BooleanOptionInEnvVars.getEntries()) {
@@ -805,31 +863,65 @@ public final class TestRunBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
+    /**
+     * server configuration and test run options resolved for one build.
+     */
+    static final class RunSetup {
+        private final ServerConfiguration serverConfiguration;
+        private final TestRunOptions options;
+
+        RunSetup(final ServerConfiguration serverConfiguration, final TestRunOptions options) {
+            this.serverConfiguration = serverConfiguration;
+            this.options = options;
+        }
+
+        ServerConfiguration getServerConfiguration() {
+            return serverConfiguration;
+        }
+
+        TestRunOptions getOptions() {
+            return options;
+        }
+    }
+
     private static class RunTestCallable extends MasterToSlaveCallable<LoadTestRun, Exception> {
 
         private final ServerConfiguration serverConfiguration;
         private final TestRunOptions testRunOptions;
         private final TaskListener listener;
+        private final String workspacePath;
+        private final String buildId;
 
         RunTestCallable(
                 final TaskListener listener,
                 final ServerConfiguration serverConfiguration,
-                final TestRunOptions testRunOptions
+                final TestRunOptions testRunOptions,
+                final String workspacePath,
+                final String buildId
         ) {
             this.listener = listener;
             this.serverConfiguration = serverConfiguration;
             this.testRunOptions = testRunOptions;
+            this.workspacePath = workspacePath;
+            this.buildId = buildId;
         }
 
         @Override
         @SuppressWarnings("java:S2093")
         public LoadTestRun call() throws Exception {
             PrintStream logger = this.listener.getLogger();
+            // the session stays registered for the trending publisher of the same build on this node
             Runner runner = new Runner(
                     this.serverConfiguration,
                     logger,
-                    this.testRunOptions
+                    this.testRunOptions,
+                    this.buildId
             );
+            // executed on the node of the workspace, the state survives a restart of the controller or the agent
+            runner.setStateStore(new RunStateStore(
+                    new File(this.workspacePath, RunStateStore.fileName(this.testRunOptions.getTestId()))
+            ));
+            runner.setReportDir(new File(this.workspacePath));
             try {
                 return runner.run();
             } catch (IOException e) {
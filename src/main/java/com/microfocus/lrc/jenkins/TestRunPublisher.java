@@ -16,7 +16,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.microfocus.lrc.core.Utils;
 import com.microfocus.lrc.core.entity.*;
-import com.microfocus.lrc.core.service.Runner;
+import com.microfocus.lrc.core.service.RunSession;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
@@ -241,6 +241,12 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
 
         TrendingConfiguration trendingCfg = this.getTrendingConfig();
 
+        BenchmarkTrendingCache benchmarkCache = new BenchmarkTrendingCache(build.getParent());
+        TrendingDataWrapper cachedBenchmark = null;
+        if (trendingCfg.getBenchmark() != null) {
+            cachedBenchmark = benchmarkCache.load(serverConfiguration.getTenantId(), trendingCfg.getBenchmark());
+        }
+
         TrendingDataWrapper wrapper = null;
         try {
             PublishReportCallable callable = new PublishReportCallable(
@@ -248,7 +254,9 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
                     trendingCfg,
                     testRun,
                     opt,
-                    listener);
+                    listener,
+                    cachedBenchmark,
+                    build.getExternalizableId());
             VirtualChannel channel = launcher.getChannel();
             if (channel != null) {
                 wrapper = channel.call(callable);
@@ -263,6 +271,16 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
             return;
         }
 
+        if (cachedBenchmark == null && wrapper.getBenchmark() != null) {
+            TrendingDataWrapper benchmarkData = new TrendingDataWrapper(
+                    wrapper.getBenchmark(),
+                    serverConfiguration.getTenantId()
+            );
+            if (benchmarkCache.save(benchmarkData)) {
+                loggerProxy.info("Trending data of benchmark run #" + wrapper.getBenchmarkId() + " cached.");
+            }
+        }
+
         TestRunReportBuildAction buildAction = saveTrendingDataToJenkinsAction(
                 build,
                 testRun.getId(),
@@ -277,6 +295,12 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
             build.setResult(Result.FAILURE);
             return;
         }
+        try {
+            buildAction.moveToStore();
+        } catch (IOException ex) {
+            loggerProxy.info("Failed to store trending data outside the build, kept in the build: " + ex.getMessage());
+        }
+        TrendingIndex.append(build, buildAction.getTrendingDataWrapper());
 
         try {
             String filename = "lrc_report_trend_"
@@ -285,15 +309,13 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
                     + "(build_" + build.getId() + ")"
                     + ".html";
             FilePath filePath = workspace.child(filename);
-            buildAction.setTrendingReportHTML(
-                    TrendingReport.generateReport(
-                            build.getParent(),
-                            trendingConfig,
-                            false,
-                            false
-                    )
+            String html = TrendingReport.generateReport(
+                    build.getParent(),
+                    trendingConfig,
+                    false,
+                    false
             );
-            filePath.write(buildAction.getTrendingReportHTML(), "UTF-8");
+            filePath.write(html, "UTF-8");
             loggerProxy.info("Trending report file generated: " + filePath.getRemote());
             build.setResult(Result.SUCCESS);
         } catch (IOException ex) {
@@ -404,19 +426,25 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
         private final LoadTestRun testRun;
         private final TestRunOptions options;
         private final TaskListener listener;
+        private final TrendingDataWrapper cachedBenchmark;
+        private final String buildId;
 
         PublishReportCallable(
                 final ServerConfiguration serverConfiguration,
                 final TrendingConfiguration trendingConfiguration,
                 final LoadTestRun testRun,
                 final TestRunOptions options,
-                final TaskListener listener
+                final TaskListener listener,
+                final TrendingDataWrapper cachedBenchmark,
+                final String buildId
         ) {
             this.serverConfiguration = serverConfiguration;
             this.trendingConfiguration = trendingConfiguration;
             this.testRun = testRun;
             this.options = options;
             this.listener = listener;
+            this.cachedBenchmark = cachedBenchmark;
+            this.buildId = buildId;
         }
 
         private PrintStream logger() {
@@ -425,13 +453,19 @@ public final class TestRunPublisher extends Recorder implements SimpleBuildStep
 
         @Override
         public TrendingDataWrapper call() throws RuntimeException {
+            // reuse the session of the test run builder of this build, the publisher is its last user
             try {
-                Runner runner = new Runner(
-                        serverConfiguration,
-                        this.listener.getLogger(),
-                        options
+                RunSession session = RunSession.acquire(
+                        this.buildId,
+                        this.serverConfiguration,
+                        this.options,
+                        this.logger()
                 );
-                return runner.fetchTrending(testRun, trendingConfiguration.getBenchmark());
+                try {
+                    return session.fetchTrending(testRun, trendingConfiguration.getBenchmark(), cachedBenchmark);
+                } finally {
+                    RunSession.release(this.buildId, this.options.getTestId(), this.serverConfiguration);
+                }
             } catch (Exception e) {
                 logger().println("Error while publishing report: " + e.getMessage());
                 return null;
@@ -23,13 +23,19 @@ import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.logging.Level;
 
 public final class TestRunReportBuildAction implements RunAction2 {
-    private final TrendingDataWrapper trendingDataWrapper;
+    // persisted with the build by earlier versions, null once moved into the TrendingStore of the job
+    private TrendingDataWrapper trendingDataWrapper;
     private final TrendingConfiguration trendingConfig;
     @SuppressWarnings("java:S2065")
     private transient Run<?, ?> run;
+    @SuppressWarnings("java:S2065")
+    private transient volatile TrendingDataWrapper storedTrendingData;
+    // persisted with the build by earlier versions, moved into the TrendingReportCache of the job by the migration
     private String trendingReportHTML;
+    private String trendingReportKey;
 
     TestRunReportBuildAction(
             final Run<?, ?> build,
@@ -42,6 +48,14 @@ public final class TestRunReportBuildAction implements RunAction2 {
     }
 
     public static TestRunReportBuildAction getLastBuildActionHasTrendingData(final Job<?, ?> job) {
+        TrendingStore store = TrendingStore.of(job);
+        if (store.isMigrated()) {
+            Integer buildNo = store.latestBuildNo();
+            Run<?, ?> build = buildNo != null ? job.getBuildByNumber(buildNo) : null;
+            return build != null ? build.getAction(TestRunReportBuildAction.class) : null;
+        }
+
+        TrendingStore.migrateInBackground(job);
         Run<?, ?> r = (job.getLastBuild());
         while (true) {
             if (r == null) {
@@ -82,14 +96,14 @@ public final class TestRunReportBuildAction implements RunAction2 {
      */
     public void doDynamic(final StaplerRequest req, final StaplerResponse response)
             throws IOException, ServletException {
-        String jsonStr = new Gson().toJson(this.trendingDataWrapper);
+        String jsonStr = new Gson().toJson(this.getTrendingDataWrapper());
         jsonStr = "<pre>" + jsonStr + "</pre>";
         String trendingConfigStr =
                 this.trendingConfig == null
                         ? "NULL"
                         : "<pre>" + new Gson().toJson(this.trendingConfig) + "</pre>";
 
-        jsonStr = jsonStr + "<br>" + trendingConfigStr + "<br>" + this.trendingReportHTML;
+        jsonStr = jsonStr + "<br>" + trendingConfigStr + "<br>" + this.getTrendingReportHTML(this.trendingConfig);
         org.kohsuke.stapler.HttpResponses.literalHtml(jsonStr).generateResponse(req, response, this);
     }
 
@@ -98,8 +112,52 @@ public final class TestRunReportBuildAction implements RunAction2 {
         return run;
     }
 
+    /**
+     * the trending data of the build, read from the trending store of the job when not persisted with the build.
+     */
     public TrendingDataWrapper getTrendingDataWrapper() {
-        return trendingDataWrapper;
+        TrendingDataWrapper wrapper = this.trendingDataWrapper;
+        if (wrapper != null) {
+            return wrapper;
+        }
+
+        wrapper = this.storedTrendingData;
+        if (wrapper == null && this.run != null) {
+            wrapper = TrendingStore.of(this.run.getParent()).read(this.run.getNumber());
+            this.storedTrendingData = wrapper;
+        }
+
+        return wrapper;
+    }
+
+    /**
+     * move the trending data persisted with the build into the trending store of the job.
+     *
+     * @return whether the data was moved, the build has to be saved then.
+     * @throws IOException
+     */
+    synchronized boolean moveToStore() throws IOException {
+        TrendingDataWrapper wrapper = this.trendingDataWrapper;
+        if (wrapper == null || this.run == null) {
+            return false;
+        }
+
+        TrendingStore store = TrendingStore.of(this.run.getParent());
+        try {
+            store.append(this.run.getNumber(), this.run.getTimeInMillis(), wrapper);
+        } catch (IOException e) {
+            // kept in the build, read from the build history until the next migration moves it
+            try {
+                store.clearMigrated();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
+        this.storedTrendingData = wrapper;
+        this.trendingDataWrapper = null;
+
+        return true;
     }
 
     public TrendingConfiguration getTrendingConfig() {
@@ -116,11 +174,82 @@ public final class TestRunReportBuildAction implements RunAction2 {
         this.run = r;
     }
 
-    public String getTrendingReportHTML() {
-        return trendingReportHTML;
+    public String getTrendingReportKey() {
+        return trendingReportKey;
+    }
+
+    /**
+     * @return the cached trending report, if it was generated for this build with the trending configuration.
+     */
+    public String getTrendingReportHTML(final TrendingConfiguration config) {
+        if (config == null || this.run == null) {
+            return null;
+        }
+
+        String key = TrendingReportCache.keyOf(this.run.getNumber(), config);
+        String legacyHtml = this.trendingReportHTML;
+        if (legacyHtml != null && this.trendingConfig != null) {
+            // not migrated yet, generated with the configuration of the build
+            return key.equals(TrendingReportCache.keyOf(this.run.getNumber(), this.trendingConfig)) ? legacyHtml : null;
+        }
+        if (this.trendingReportKey == null) {
+            return null;
+        }
+
+        if (!key.equals(this.trendingReportKey)) {
+            return null;
+        }
+
+        return new TrendingReportCache(this.run.getParent()).load(key);
+    }
+
+    /**
+     * store the trending report generated for this build, only its cache key is persisted with the build.
+     */
+    public void setTrendingReportHTML(final String html, final TrendingConfiguration config) {
+        if (!this.cacheReport(html, config)) {
+            return;
+        }
+
+        try {
+            this.run.save();
+        } catch (IOException e) {
+            LoggerProxy.getSysLogger().log(Level.WARNING, "Failed to save build #" + this.run.getNumber(), e);
+        }
+    }
+
+    /**
+     * @return whether the cache key changed.
+     */
+    private boolean cacheReport(final String html, final TrendingConfiguration config) {
+        if (html == null || config == null || this.run == null) {
+            return false;
+        }
+
+        String key = TrendingReportCache.keyOf(this.run.getNumber(), config);
+        if (!new TrendingReportCache(this.run.getParent()).save(key, html) || key.equals(this.trendingReportKey)) {
+            return false;
+        }
+
+        this.trendingReportKey = key;
+        return true;
     }
 
-    public void setTrendingReportHTML(final String trendingReportHTML) {
-        this.trendingReportHTML = trendingReportHTML;
+    /**
+     * move the trending report persisted with the build into the trending report cache of the job.
+     *
+     * @return whether the report was moved, the build has to be saved then.
+     */
+    synchronized boolean moveReportToCache() {
+        String html = this.trendingReportHTML;
+        if (html == null || this.run == null) {
+            return false;
+        }
+
+        // dropping the HTML from build.xml is the point, even if it could not be cached
+        this.cacheReport(html, this.trendingConfig);
+        this.trendingReportHTML = null;
+
+        return true;
     }
 }
@@ -15,7 +15,6 @@ package com.microfocus.lrc.jenkins;
 import com.microfocus.lrc.core.entity.TrendingConfiguration;
 import hudson.model.Action;
 import hudson.model.Job;
-import hudson.model.Run;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -38,13 +37,7 @@ public final class TestRunReportProjectAction implements Action {
     }
 
     public boolean isVisible() {
-        for (Run<?, ?> build : this.getProject().getBuilds()) {
-            TestRunReportBuildAction buildAction = build.getAction(TestRunReportBuildAction.class);
-            if (buildAction != null && buildAction.getTrendingDataWrapper() != null) {
-                return true;
-            }
-        }
-        return false;
+        return TestRunReportBuildAction.getLastBuildActionHasTrendingData(this.getProject()) != null;
     }
 
     public String getDisplayName() {
@@ -89,17 +82,12 @@ public final class TestRunReportProjectAction implements Action {
                             buildAction.getRun().getNumber()
                     )
             );
-            if (forceUpdate || buildAction.getTrendingReportHTML() == null) {
-                htmlContent = TrendingReport.generateReport(
-                        this.project,
-                        this.trendingConfig,
-                        forceUpdate,
-                        extraContent
-                );
-                buildAction.setTrendingReportHTML(htmlContent);
-            } else {
-                htmlContent = buildAction.getTrendingReportHTML();
-            }
+            htmlContent = TrendingReport.generateReport(
+                    this.project,
+                    this.trendingConfig,
+                    forceUpdate,
+                    extraContent
+            );
         }
 
 
@@ -0,0 +1,181 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import hudson.model.Job
+import hudson.model.Run
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Per-job index of the builds having trending data, grouped by (tenant, test) and newest first.
+ *
+ * Once the [TrendingStore] of the job is migrated the index is read from there, without loading any build.
+ * Before, the build history is walked lazily, only as deep as a report needs, and never twice.
+ * Builds completing afterwards are appended by [TestRunPublisher],
+ * so regenerating a trending report costs O(new builds) instead of a walk over previous builds.
+ * Deleting a build or changing the job drops the index of that job, see [TrendingIndexInvalidation].
+ */
+class TrendingIndex private constructor() {
+    class Entry(
+        val buildNo: Int,
+        val buildTime: Long,
+        val wrapper: TrendingDataWrapper,
+    )
+
+    private data class SeriesKey(
+        val tenantId: String?,
+        val testId: Int,
+    )
+
+    // newest build first, at most RUN_COUNT_MAX builds per series
+    private val series = HashMap<SeriesKey, TreeMap<Int, Entry>>()
+    private var latest: Entry? = null
+
+    // the oldest build number visited by the history walk, Int.MAX_VALUE before the first walk
+    private var oldestWalked = Int.MAX_VALUE
+    private var exhausted = false
+
+    /**
+     * the newest build having trending data, followed by the previous builds of the same tenant and test,
+     * [count] builds at most.
+     */
+    @Synchronized
+    fun latestSeries(job: Job<*, *>, count: Int): List<Entry> {
+        if (!this.exhausted) {
+            val store = TrendingStore.of(job)
+            if (store.isMigrated()) {
+                this.load(store)
+            }
+        }
+
+        this.walk(job) { this.latest != null }
+        val latestEntry = this.latest ?: return emptyList()
+
+        val key = keyOf(latestEntry.wrapper)
+        this.walk(job) { this.seriesOf(key).size >= count }
+
+        return this.seriesOf(key).values.take(count)
+    }
+
+    @Synchronized
+    private fun add(entry: Entry) {
+        val entries = this.series.getOrPut(keyOf(entry.wrapper)) { TreeMap(Comparator.reverseOrder()) }
+        entries[entry.buildNo] = entry
+        while (entries.size > TestRunPublisher.RUN_COUNT_MAX) {
+            entries.pollLastEntry()
+        }
+
+        val current = this.latest
+        if (current == null || current.buildNo <= entry.buildNo) {
+            this.latest = entry
+        }
+    }
+
+    private fun seriesOf(key: SeriesKey): Map<Int, Entry> {
+        return this.series[key] ?: emptyMap()
+    }
+
+    /**
+     * read the newest builds of each series from the store, older builds are skipped on their header alone.
+     */
+    private fun load(store: TrendingStore) {
+        val counts = HashMap<Pair<Long, Int>, Int>()
+        for (record in store.records()) {
+            val key = Pair(record.tenantDigest, record.testId)
+            val count = counts[key] ?: 0
+            if (record.transactions == 0 || count >= TestRunPublisher.RUN_COUNT_MAX) {
+                continue
+            }
+
+            val wrapper = store.read(record) ?: continue
+            this.add(Entry(record.buildNo, record.buildTime, wrapper))
+            counts[key] = count + 1
+        }
+
+        this.exhausted = true
+    }
+
+    /**
+     * continue the history walk from the oldest build visited so far, until [done] or the first build.
+     */
+    private fun walk(job: Job<*, *>, done: () -> Boolean) {
+        if (this.exhausted || done()) {
+            return
+        }
+
+        var build: Run<*, *>? = if (this.oldestWalked == Int.MAX_VALUE) {
+            job.lastBuild
+        } else {
+            job.getNearestOldBuild(this.oldestWalked - 1)
+        }
+        while (build != null && !done()) {
+            entryOf(build)?.let { this.add(it) }
+            this.oldestWalked = build.number
+            build = build.previousBuild
+        }
+
+        if (build == null) {
+            this.exhausted = true
+        }
+    }
+
+    companion object {
+        private val indexes = ConcurrentHashMap<String, TrendingIndex>()
+
+        @JvmStatic
+        fun of(job: Job<*, *>): TrendingIndex {
+            return indexes.computeIfAbsent(job.fullName) { TrendingIndex() }
+        }
+
+        /**
+         * add a completed build to the index of its job, if that index has been built already.
+         */
+        @JvmStatic
+        fun append(build: Run<*, *>, wrapper: TrendingDataWrapper) {
+            val index = indexes[build.parent.fullName] ?: return
+            if (hasTransactions(wrapper)) {
+                index.add(Entry(build.number, build.timeInMillis, wrapper))
+            }
+        }
+
+        @JvmStatic
+        fun invalidate(jobFullName: String) {
+            indexes.remove(jobFullName)
+        }
+
+        @JvmStatic
+        fun clear() {
+            indexes.clear()
+        }
+
+        private fun entryOf(build: Run<*, *>): Entry? {
+            @SuppressWarnings("kotlin:S1874")
+            val wrapper = build.getAction(TestRunReportBuildAction::class.java)?.trendingDataWrapper
+            if (wrapper == null || !hasTransactions(wrapper)) {
+                return null
+            }
+
+            return Entry(build.number, build.timeInMillis, wrapper)
+        }
+
+        private fun hasTransactions(wrapper: TrendingDataWrapper): Boolean {
+            return (wrapper.trendingData?.transactions?.size ?: 0) > 0
+        }
+
+        private fun keyOf(wrapper: TrendingDataWrapper): SeriesKey {
+            return SeriesKey(wrapper.tenantId, wrapper.trendingData.testId)
+        }
+    }
+}
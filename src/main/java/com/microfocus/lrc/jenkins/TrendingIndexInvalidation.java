@@ -0,0 +1,88 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+/**
+ * Drops the {@link TrendingIndex} of a job when one of its builds is deleted or the job itself changes.
+ * The index is rebuilt on the next trending report, deleted builds are removed from the {@link TrendingStore} too.
+ */
+public final class TrendingIndexInvalidation {
+
+    private TrendingIndexInvalidation() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    @Extension
+    public static final class BuildDeletion extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            TrendingIndex.invalidate(run.getParent().getFullName());
+            // jobs without LoadRunner Cloud builds have no store, none is created for them
+            if (!TrendingStore.exists(run.getParent())) {
+                return;
+            }
+
+            try {
+                TrendingStore.of(run.getParent()).remove(run.getNumber());
+            } catch (IOException e) {
+                LoggerProxy.getSysLogger().log(
+                        Level.WARNING,
+                        "Failed to remove build #" + run.getNumber() + " from the trending store.",
+                        e
+                );
+            }
+        }
+    }
+
+    @Extension
+    public static final class JobChange extends ItemListener {
+        @Override
+        public void onUpdated(final Item item) {
+            invalidate(item, item.getFullName());
+        }
+
+        @Override
+        public void onDeleted(final Item item) {
+            invalidate(item, item.getFullName());
+            forget(item, item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            invalidate(item, oldFullName);
+            forget(item, oldFullName);
+        }
+
+        private static void invalidate(final Item item, final String fullName) {
+            if (item instanceof Job) {
+                TrendingIndex.invalidate(fullName);
+            }
+        }
+
+        private static void forget(final Item item, final String fullName) {
+            if (item instanceof Job) {
+                TrendingStore.forget(fullName);
+            }
+        }
+    }
+}
@@ -12,7 +12,6 @@
 
 package com.microfocus.lrc.jenkins
 
-import com.google.gson.Gson
 import com.google.gson.JsonArray
 import com.google.gson.JsonObject
 import com.microfocus.lrc.core.Constants
@@ -29,11 +28,54 @@ import java.math.BigDecimal
 import java.math.RoundingMode
 import java.nio.charset.StandardCharsets
 import java.text.SimpleDateFormat
-import java.util.function.BiPredicate
+import java.util.Date
 import java.util.logging.Level
-import java.util.stream.Collectors
 
 class TrendingReport {
+    /**
+     * trending data of one build, referenced as is from its build action.
+     */
+    private class BuildTrending(
+        val buildNo: Int,
+        val buildDate: String,
+        val data: TrendingDataWrapper.TrendingData,
+    )
+
+    /**
+     * one transaction of one build, in its (name, script) group.
+     */
+    private class TransactionPoint(
+        val buildNo: Int,
+        val runId: Int,
+        val percentile: Int,
+        val transaction: TransactionData,
+    )
+
+    /**
+     * the points of one transaction group, indexed by run id.
+     */
+    private class TransactionSeries(points: List<TransactionPoint>) {
+        private val previousByRunId = HashMap<Int, TransactionPoint>()
+
+        init {
+            // the first point of each run, in build order
+            val firstByRunId = LinkedHashMap<Int, TransactionPoint>()
+            points.forEach { firstByRunId.putIfAbsent(it.runId, it) }
+
+            val runIds = firstByRunId.keys.sorted()
+            for (i in 1 until runIds.size) {
+                this.previousByRunId[runIds[i]] = firstByRunId.getValue(runIds[i - 1])
+            }
+        }
+
+        /**
+         * the point of the max run id smaller than [runId], null if there is none.
+         */
+        fun previous(runId: Int): TransactionPoint? {
+            return this.previousByRunId[runId]
+        }
+    }
+
     companion object {
         @JvmStatic
         @SuppressWarnings("kotlin:S3776")
@@ -56,17 +98,11 @@ class TrendingReport {
             //#endregion
             LoggerProxy.sysLogger.log(Level.INFO, "Trending report generation starts for project \"${project.name}\"")
 
-            var latestBuild: Run<*, *>? = null
-
-            //#region get the latest build has trending data
-            val latestBuilds: List<Run<*, *>> =
-                this.findValidBuilds(project.lastBuild, 1) { build, _ ->
-                    this.isHavingTrendingData(build)
-                }
-            if (latestBuilds.size == 1) {
-                latestBuild = latestBuilds[0]
-            }
-
+            //#region get the latest build has trending data, and the previous builds of the same test
+            // this list will at least have ONE item when found, the "latestBuild" itself
+            val entries: List<TrendingIndex.Entry> =
+                TrendingIndex.of(project).latestSeries(project, trendingConfig.runsCount)
+            val latestBuild: Run<*, *>? = entries.firstOrNull()?.let { project.getBuildByNumber(it.buildNo) }
             if (latestBuild == null) {
                 LoggerProxy.sysLogger.log(Level.INFO, "No valid build found, failed to generate trending report.")
                 return null
@@ -85,8 +121,6 @@ class TrendingReport {
 
             LoggerProxy.sysLogger.log(Level.FINE, "Latest valid build found: build#" + latestBuild.getNumber())
             //#endregion
-            val generatorLogs = StringBuilder()
-
             //#region check if report has been generated for the latestBuild
             // and if trendingConfig is changed since last generating.
             val cachedHTML = this.findCachedHTML(latestBuildAction, trendingConfig, forceUpdate)
@@ -96,35 +130,74 @@ class TrendingReport {
             //#endregion
 
 
-            //this list will at least have ONE item, the "latestBuild" itself
-            val latestBuildsHasTrendingDataAndSameTestId: List<Run<*, *>> =
-                this.findValidBuilds(
-                    latestBuild,
-                    trendingConfig.runsCount
-                ) { build: Run<*, *>?, baseBuild: Run<*, *>? ->
-                    this.isHavingTrendingDataAndSameTestId(
-                        build,
-                        baseBuild
-                    )
-                }
-
             LoggerProxy.sysLogger.log(
                 Level.FINE,
-                buildString {
-                    append("Totally ${latestBuildsHasTrendingDataAndSameTestId.size} builds found: ")
-                    append(latestBuildsHasTrendingDataAndSameTestId.stream().map { build: Run<*, *> ->
-                        "#${build.getNumber()}"
-                    }.reduce("") { a: String, b: String -> "$a, $b" })
-                }
+                "Totally ${entries.size} builds found: " + entries.joinToString(", ") { "#${it.buildNo}" }
             )
 
-            val latestTrans = latestBuildAction.trendingDataWrapper.trendingData.transactions
-            var latestBenchmark: TrendingDataWrapper.TrendingData? = latestBuildAction.trendingDataWrapper.benchmark
+            val data = this.reportData(entries, latestBuildAction.trendingDataWrapper, trendingConfig)
+            data.addProperty("baseURL", Jenkins.getInstanceOrNull()?.rootUrl + "plugin/loadrunner-cloud/")
+            data.addProperty("extraContent", extraContent)
+            val slotContent: Map<String, String>
+            val htmlTemplate: String
+            try {
+                slotContent = mapOf(
+                    "pureCss" to IOUtils.toString(
+                        TestRunBuilder::class.java.classLoader
+                            .getResourceAsStream("trending_report/pure.min.css"), StandardCharsets.UTF_8
+                    ),
+                    "lodashjs" to IOUtils.toString(
+                        TestRunBuilder::class.java.classLoader
+                            .getResourceAsStream("trending_report/lodash.min.js"), StandardCharsets.UTF_8
+                    ),
+                    "momentjs" to IOUtils.toString(
+                        TestRunBuilder::class.java.classLoader
+                            .getResourceAsStream("trending_report/moment.min.js"), StandardCharsets.UTF_8
+                    )
+                )
+                slotContent.forEach(data::addProperty)
+                htmlTemplate = IOUtils.toString(
+                    TestRunBuilder::class.java.classLoader.getResourceAsStream("trending_report/run_report.twig"),
+                    StandardCharsets.UTF_8
+                )
+            } catch (e: IOException) {
+                LoggerProxy.sysLogger
+                    .log(Level.SEVERE, "Failed to load resource files for trending report, " + e.message)
+                return null
+            }
+
+            val html = try {
+                HTMLTemplate.generateByPebble(htmlTemplate, data)
+            } catch (e: IOException) {
+                LoggerProxy.sysLogger.log(Level.SEVERE, "Failed to generate html, " + e.message)
+                return "failed to generate"
+            }
+
+            // the report with extra content is for troubleshooting, not kept
+            if (!extraContent) {
+                latestBuildAction.setTrendingReportHTML(html, trendingConfig)
+            }
+
+            return html
+        }
+
+        /**
+         * the data rendered by the report: the overview of each build in [entries] (newest first)
+         * and the transaction rows, with their trends against the benchmark of the [latest] build.
+         */
+        internal fun reportData(
+            entries: List<TrendingIndex.Entry>,
+            latest: TrendingDataWrapper,
+            trendingConfig: TrendingConfiguration
+        ): JsonObject {
+            val generatorLogs = StringBuilder()
+            val latestTrans = latest.trendingData.transactions
+            var latestBenchmark: TrendingDataWrapper.TrendingData? = latest.benchmark
             if (latestBenchmark == null) {
                 LoggerProxy.sysLogger.log(
                     Level.INFO, "Latest benchmark is null, choose the run itself as benchmark."
                 )
-                latestBenchmark = latestBuildAction.trendingDataWrapper.trendingData!!
+                latestBenchmark = latest.trendingData!!
             }
             val benchmark: TrendingDataWrapper.TrendingData = latestBenchmark
             LoggerProxy.sysLogger.log(
@@ -132,62 +205,29 @@ class TrendingReport {
             )
             val dateFormat = SimpleDateFormat("yyyy.MM.dd HH:mm:ss")
 
-            //{buildId: number, data: TrendingDataWrapper}[]
-
-            val trendingDataWrapperList: List<JsonObject> =
-                latestBuildsHasTrendingDataAndSameTestId.stream().map { b: Run<*, *> ->
-                    val tempTrd = JsonObject()
-
-                    @SuppressWarnings("kotlin:S1874")
-                    val trendingDataWrapper: TrendingDataWrapper =
-                        b.getAction(TestRunReportBuildAction::class.java).trendingDataWrapper
-                    tempTrd.addProperty("data", Gson().toJson(trendingDataWrapper))
-                    tempTrd.addProperty("buildId", b.getNumber())
-                    tempTrd.addProperty("buildDate", dateFormat.format(b.time))
-                    tempTrd
-                }.collect(Collectors.toList())
+            val builds: List<BuildTrending> = entries.map { entry ->
+                BuildTrending(entry.buildNo, dateFormat.format(Date(entry.buildTime)), entry.wrapper.trendingData)
+            }
 
             val overviews = JsonArray()
-            trendingDataWrapperList.stream().map { jsonObject: JsonObject ->
-                getOverviewFromTrendingData(
-                    jsonObject
-                )
-            }.collect(Collectors.toList()).forEach { overview: JsonObject ->
-                overviews.add(overview)
-            }
+            builds.forEach { build -> overviews.add(getOverviewFromTrendingData(build)) }
 
             val trts = JsonArray()
-            val transactionsGroup: Map<Pair<String, Int>, List<JsonObject>> =
-                trendingDataWrapperList.stream().flatMap { t: JsonObject ->
-                    (Gson().fromJson(
-                        t.get("data").asString,
-                        TrendingDataWrapper::class.java
-                    )).trendingData.transactions.stream()
-                        .map { trans ->
-                            val tempTrans = JsonObject()
-                            val trendingDataWrapper: TrendingDataWrapper =
-                                Gson().fromJson(t.get("data").asString, TrendingDataWrapper::class.java)
-                            tempTrans.addProperty("data", Gson().toJson(trans))
-                            tempTrans.addProperty("buildId", t.get("buildId").asInt)
-                            tempTrans.addProperty("runId", trendingDataWrapper.trendingData.runId)
-                            tempTrans.addProperty("percentile", trendingDataWrapper.trendingData.percentile)
-                            return@map tempTrans
-                        }
-                }.filter{transJSON ->
-                    val trans = Gson().fromJson(transJSON.get("data").asString, TrendingDataWrapper.TransactionData::class.java)
-                    return@filter latestTrans.stream().anyMatch{ x -> x.testScriptID == trans.testScriptID }
-                }.collect(
-                    Collectors.groupingBy { transJSON ->
-                        val trans: TrendingDataWrapper.TransactionData =
-                            Gson().fromJson(
-                                transJSON.get("data").asString,
-                                TrendingDataWrapper.TransactionData::class.java
-                            )
-                        return@groupingBy Pair(trans.name, trans.testScriptID)
-                    }
-                )
+            val latestScriptIds: Set<Int> = latestTrans.mapTo(HashSet()) { it.testScriptID }
+            val benchmarkIndex = HashMap<Pair<String, Int>, TransactionData>()
+            benchmark.transactions.forEach { t -> benchmarkIndex.putIfAbsent(Pair(t.name, t.testScriptID), t) }
 
-            transactionsGroup.forEach { (transScriptPair: Pair<String, Int>, transJSONList: List<JsonObject>) ->
+            val transactionsGroup: Map<Pair<String, Int>, List<TransactionPoint>> = builds.flatMap { build ->
+                build.data.transactions.map { trans ->
+                    TransactionPoint(build.buildNo, build.data.runId, build.data.percentile, trans)
+                }
+            }.filter { point ->
+                latestScriptIds.contains(point.transaction.testScriptID)
+            }.groupBy { point ->
+                Pair(point.transaction.name, point.transaction.testScriptID)
+            }
+
+            transactionsGroup.forEach { (transScriptPair: Pair<String, Int>, points: List<TransactionPoint>) ->
                 generatorLogs.append(
                     String.format(
                         "processing transaction group: %1\$s - %2\$s%n",
@@ -198,86 +238,64 @@ class TrendingReport {
                 val trtGroup = JsonObject()
                 trtGroup.addProperty("transactionName", transScriptPair.first)
                 trtGroup.addProperty("testScriptID", transScriptPair.second)
-                val trans = Gson().fromJson(transJSONList[0].get("data").asString, TransactionData::class.java)
-                trtGroup.addProperty("scriptName", trans.script)
-                trtGroup.add("trtDataArr", JsonArray())
-                //transJSONList: {buildId, runId, percentile, data: TransactionData}[]
-                transJSONList.stream()
-                    .map { transJSON: JsonObject ->
-                        generatorLogs.append(
-                            java.lang.String.format(
-                                "\t\tprocessing test run: %d%n",
-                                transJSON.get("runId").asInt
-                            )
+                trtGroup.addProperty("scriptName", points[0].transaction.script)
+                val trtDataArr = JsonArray()
+                trtGroup.add("trtDataArr", trtDataArr)
+                val series = TransactionSeries(points)
+                points.forEach { point ->
+                    generatorLogs.append(
+                        java.lang.String.format(
+                            "\t\tprocessing test run: %d%n",
+                            point.runId
                         )
-                        //here is the default benchmark transaction
-                        var benchmarkTrans: TrendingDataWrapper.TransactionData? = benchmark.transactions.stream()
-                            .filter { t ->
-                                (transScriptPair.first == t.name)
-                                && (transScriptPair.second == t.testScriptID)
-                            }
-                            .findAny().orElse(null)
-                        var benchmarkRunId: Int = benchmark.runId
-                        if (latestBuildAction.trendingDataWrapper.benchmarkId == null) {
-                            generatorLogs.append("\t\t\t\tbenchmark is set to 'Previous'\n")
-                            //benchmarkId == null means that the "Benchmark" is set to "Previous"
-                            //so the benchmark for each transactionData should be the "trending data of previous build"
-                            val prevData: Pair<Int, TrendingDataWrapper.TransactionData?>? =
-                                this.getPreviousRunTrans(
-                                    transJSONList,
-                                    transJSON.get("runId").asInt
-                                )
-                            if ((prevData != null) && (prevData.second != null)) {
-                                generatorLogs.append(
-                                    "\t\t\t\tbenchmark found: testrun#${prevData.first}",
-                                )
-                                benchmarkTrans = prevData.second
-                                benchmarkRunId = prevData.first
-                            } else {
-                                generatorLogs.append("\t\t\t\tbenchmark not found: use the run itself.\n")
-                                benchmarkTrans = Gson().fromJson(
-                                    transJSON.get("data").asString,
-                                    TrendingDataWrapper.TransactionData::class.java
-                                )
-                                benchmarkRunId = transJSON.get("runId").asInt
-                            }
-                        } else {
+                    )
+                    //here is the default benchmark transaction
+                    var benchmarkTrans: TrendingDataWrapper.TransactionData? = benchmarkIndex[transScriptPair]
+                    var benchmarkRunId: Int = benchmark.runId
+                    if (latest.benchmarkId == null) {
+                        generatorLogs.append("\t\t\t\tbenchmark is set to 'Previous'\n")
+                        //benchmarkId == null means that the "Benchmark" is set to "Previous"
+                        //so the benchmark for each transactionData should be the "trending data of previous build"
+                        val prevData: TransactionPoint? = series.previous(point.runId)
+                        if (prevData != null) {
                             generatorLogs.append(
-                                ("\t\t\t\tbenchmark is " + latestBuildAction.trendingDataWrapper
-                                    .benchmarkId) + "\n"
+                                "\t\t\t\tbenchmark found: testrun#${prevData.runId}",
                             )
-                            if (benchmarkTrans == null) {
-                                generatorLogs.append(
-                                    String.format(
-                                        "\t\t\t\tcannot find benchmark for %1\$s - %2\$s%n",
-                                        transScriptPair.first,
-                                        transScriptPair.second
-                                    )
+                            benchmarkTrans = prevData.transaction
+                            benchmarkRunId = prevData.runId
+                        } else {
+                            generatorLogs.append("\t\t\t\tbenchmark not found: use the run itself.\n")
+                            benchmarkTrans = point.transaction
+                            benchmarkRunId = point.runId
+                        }
+                    } else {
+                        generatorLogs.append("\t\t\t\tbenchmark is " + latest.benchmarkId + "\n")
+                        if (benchmarkTrans == null) {
+                            generatorLogs.append(
+                                String.format(
+                                    "\t\t\t\tcannot find benchmark for %1\$s - %2\$s%n",
+                                    transScriptPair.first,
+                                    transScriptPair.second
                                 )
-                            }
+                            )
                         }
-                        val trt = calculateTRT(
-                            transJSON.get("runId").asInt,
+                    }
+                    trtDataArr.add(
+                        calculateTRT(
+                            point.runId,
                             benchmarkRunId,
-                            transJSON.get("buildId").asInt,
-                            transJSON.get("percentile").asInt,
-                            Gson().fromJson(
-                                transJSON.get("data").asString,
-                                TrendingDataWrapper.TransactionData::class.java
-                            ),
+                            point.buildNo,
+                            point.percentile,
+                            point.transaction,
                             benchmarkTrans,
                             trendingConfig
                         )
-                        return@map trt
-                    }.forEach { trtJSON ->
-                        trtGroup.getAsJsonArray("trtDataArr").add(trtJSON)
-                    }
+                    )
+                }
                 trts.add(trtGroup)
             }
 
             val data = JsonObject()
-            data.addProperty("baseURL", Jenkins.getInstanceOrNull()?.rootUrl + "plugin/loadrunner-cloud/")
-
             data.addProperty("trtAvgTholdImpr", trendingConfig.trtAvgTholdImpr)
             data.addProperty("trtAvgTholdMinorRegr", trendingConfig.trtAvgTholdMinorRegr)
             data.addProperty("trtAvgTholdMajorRegr", trendingConfig.trtAvgTholdMajorRegr)
@@ -290,51 +308,18 @@ class TrendingReport {
             data.add("data", JsonObject())
             data.get("data").asJsonObject.add("metrics", overviews)
             data.get("data").asJsonObject.add("trt", trts)
-            data.addProperty("testId", latestBuildAction.trendingDataWrapper.trendingData.testId)
-            data.addProperty("testName", latestBuildAction.trendingDataWrapper.trendingData.testName)
+            data.addProperty("testId", latest.trendingData.testId)
+            data.addProperty("testName", latest.trendingData.testName)
 
-            if (latestBuildAction.trendingDataWrapper.benchmarkId == null) {
+            if (latest.benchmarkId == null) {
                 data.addProperty(Constants.BENCHMARK, 0)
             } else {
-                data.addProperty(Constants.BENCHMARK, latestBuildAction.trendingDataWrapper.benchmarkId)
+                data.addProperty(Constants.BENCHMARK, latest.benchmarkId)
             }
 
             data.addProperty("generatorLogs", generatorLogs.toString())
-            data.addProperty("extraContent", extraContent)
-            val slotContent: Map<String, String>
-            val htmlTemplate: String
-            try {
-                slotContent = mapOf(
-                    "pureCss" to IOUtils.toString(
-                        TestRunBuilder::class.java.classLoader
-                            .getResourceAsStream("trending_report/pure.min.css"), StandardCharsets.UTF_8
-                    ),
-                    "lodashjs" to IOUtils.toString(
-                        TestRunBuilder::class.java.classLoader
-                            .getResourceAsStream("trending_report/lodash.min.js"), StandardCharsets.UTF_8
-                    ),
-                    "momentjs" to IOUtils.toString(
-                        TestRunBuilder::class.java.classLoader
-                            .getResourceAsStream("trending_report/moment.min.js"), StandardCharsets.UTF_8
-                    )
-                )
-                slotContent.forEach(data::addProperty)
-                htmlTemplate = IOUtils.toString(
-                    TestRunBuilder::class.java.classLoader.getResourceAsStream("trending_report/run_report.twig"),
-                    StandardCharsets.UTF_8
-                )
-            } catch (e: IOException) {
-                LoggerProxy.sysLogger
-                    .log(Level.SEVERE, "Failed to load resource files for trending report, " + e.message)
-                return null
-            }
 
-            return try {
-                HTMLTemplate.generateByPebble(htmlTemplate, data)
-            } catch (e: IOException) {
-                LoggerProxy.sysLogger.log(Level.SEVERE, "Failed to generate html, " + e.message)
-                "failed to generate"
-            }
+            return data
         }
 
         private fun findCachedHTML(
@@ -342,86 +327,31 @@ class TrendingReport {
             trendingConfig: TrendingConfiguration,
             forceUpdate: Boolean
         ): String? {
-            if (latestBuildAction.trendingReportHTML == null) {
-                LoggerProxy.sysLogger.log(Level.INFO, "Cached trending report not found, generating.")
+            if (forceUpdate) {
                 return null
             }
 
-            val lastTrendingConfig: TrendingConfiguration = latestBuildAction.trendingConfig
-            return if (this.isSameTrendingConfig(lastTrendingConfig, trendingConfig) && !forceUpdate) {
+            val cachedHTML = latestBuildAction.getTrendingReportHTML(trendingConfig)
+            if (cachedHTML == null) {
                 LoggerProxy.sysLogger.log(
                     Level.INFO,
-                    "Cached trending report found and trending config is not changed"
+                    "Cached trending report not found or trending config is changed, generating."
                 )
-                latestBuildAction.trendingReportHTML
             } else {
                 LoggerProxy.sysLogger.log(
                     Level.INFO,
-                    "Cached trending report found but trending config is changed, re-generating."
+                    "Cached trending report found and trending config is not changed"
                 )
-                null
             }
-        }
 
-        private fun findValidBuilds(
-            start: Run<*, *>?,
-            buildCount: Int,
-            isValid: BiPredicate<Run<*, *>?, Run<*, *>?>
-        ): List<Run<*, *>> {
-            val list: MutableList<Run<*, *>> = ArrayList()
-            var lastBuild = start
-            while (list.size < buildCount && lastBuild != null) {
-                if (isValid.test(lastBuild, start)) {
-                    list.add(lastBuild)
-                }
-                lastBuild = lastBuild.previousBuild
-            }
-            return list
+            return cachedHTML
         }
 
-        private fun isHavingTrendingData(build: Run<*, *>?): Boolean {
-            @SuppressWarnings("kotlin:S1874")
-            val trendingAction: TestRunReportBuildAction? = build?.getAction(TestRunReportBuildAction::class.java)
-            val size = trendingAction?.trendingDataWrapper?.trendingData?.transactions?.size ?: 0
-            return size > 0
-        }
-
-        private fun isSameTrendingConfig(configA: TrendingConfiguration, configB: TrendingConfiguration): Boolean {
-            return configA.runsCount.equals(configB.runsCount) &&
-                    configA.trtAvgTholdImpr.equals(configB.trtAvgTholdImpr) &&
-                    configA.trtAvgTholdMajorRegr.equals(configB.trtAvgTholdMajorRegr) &&
-                    configA.trtAvgTholdMinorRegr.equals(configB.trtAvgTholdMinorRegr) &&
-                    configA.trtPctlTholdImpr.equals(configB.trtPctlTholdImpr) &&
-                    configA.trtPctlTholdMajorRegr.equals(configB.trtPctlTholdMajorRegr) &&
-                    configA.trtPctlTholdMinorRegr.equals(configB.trtPctlTholdMinorRegr)
-        }
-
-        private fun isHavingTrendingDataAndSameTestId(build: Run<*, *>?, baseBuild: Run<*, *>?): Boolean {
-            if (!this.isHavingTrendingData(build)) {
-                return false
-            }
-            @SuppressWarnings("kotlin:S1874")
-            val trendingAction = build?.getAction(TestRunReportBuildAction::class.java)
-                ?: return false
-
-            @SuppressWarnings("kotlin:S1874")
-            val baseTrendingAction: TestRunReportBuildAction =
-                baseBuild?.getAction(TestRunReportBuildAction::class.java)
-                    ?: return false
-            val testId: Int = trendingAction.trendingDataWrapper.trendingData.testId
-            val baseTestId: Int = baseTrendingAction.trendingDataWrapper.trendingData.testId
-            val tenantId: String = trendingAction.trendingDataWrapper.tenantId
-            val baseTenantId: String = baseTrendingAction.trendingDataWrapper.tenantId
-
-            return (testId == baseTestId) && (tenantId == baseTenantId)
-        }
-
-        private fun getOverviewFromTrendingData(jsonObject: JsonObject): JsonObject {
-            val trendingData: TrendingDataWrapper.TrendingData =
-                Gson().fromJson(jsonObject.get("data").asString, TrendingDataWrapper::class.java).trendingData
+        private fun getOverviewFromTrendingData(build: BuildTrending): JsonObject {
+            val trendingData: TrendingDataWrapper.TrendingData = build.data
             val overview = JsonObject()
             overview.addProperty("runId", trendingData.runId)
-            overview.addProperty("buildNo", jsonObject.get("buildId").asInt)
+            overview.addProperty("buildNo", build.buildNo)
             this.putNumberSafely(overview, "avgHits", trendingData.avgHits)
             this.putNumberSafely(
                 overview,
@@ -449,8 +379,7 @@ class TrendingReport {
             overview.addProperty("totalTxFailed", trendingData.totalTxFailed)
 
             overview.addProperty("status", trendingData.status)
-            val startTime = jsonObject.get("buildDate").asString
-            overview.addProperty("date", startTime)
+            overview.addProperty("date", build.buildDate)
             return overview
         }
 
@@ -462,27 +391,6 @@ class TrendingReport {
             json.addProperty(key, safeVal)
         }
 
-        private fun getPreviousRunTrans( //JSONObject: {buildId, runId, percentile, data: TransactionData}
-            transJSONList: List<JsonObject>,
-            currentRunId: Int
-        ): Pair<Int, TrendingDataWrapper.TransactionData?>? {
-            //the "previous" is the max run id smaller than the current one.
-            val prevRunId = transJSONList.stream()
-                .map { trans: JsonObject -> trans.get("runId").asInt }
-                .filter { x -> x < currentRunId }
-                .max(Comparator.naturalOrder())
-                .orElse(null) ?: return null
-
-            val prevTrans: JsonObject = transJSONList.stream()
-                .filter { x: JsonObject -> x.get("runId").asInt == prevRunId }
-                .findFirst()
-                .get()
-            val prevTransactionData: TrendingDataWrapper.TransactionData = Gson().fromJson(
-                prevTrans.get("data").asString, TrendingDataWrapper.TransactionData::class.java
-            )
-            return Pair(prevRunId, prevTransactionData)
-        }
-
         private fun calculateTRT(
             runId: Int,
             benchmarkRunId: Int,
@@ -0,0 +1,169 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.microfocus.lrc.core.Constants;
+import com.microfocus.lrc.core.entity.TrendingConfiguration;
+import hudson.model.Job;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rendered trending reports, gzip-compressed under the job directory.
+ * Reports are keyed by the latest build and the trending configuration they were generated for,
+ * the least recently used ones are evicted above {@link Constants#TRENDING_REPORT_CACHE_MAX_BYTES}.
+ */
+final class TrendingReportCache {
+
+    private static final String DIR_NAME = "lrc_trending_reports";
+    private static final String SUFFIX = ".html.gz";
+    private static final int CONFIG_HASH_LENGTH = 16;
+
+    private final File dir;
+
+    TrendingReportCache(final Job<?, ?> job) {
+        this(new File(job.getRootDir(), DIR_NAME));
+    }
+
+    TrendingReportCache(final File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the cache key of the report of the build, generated with the trending configuration.
+     */
+    static String keyOf(final int buildNo, final TrendingConfiguration config) {
+        String values = Arrays.asList(
+                config.getRunsCount(),
+                config.getTrtAvgTholdImpr(),
+                config.getTrtAvgTholdMinorRegr(),
+                config.getTrtAvgTholdMajorRegr(),
+                config.getTrtPctlTholdImpr(),
+                config.getTrtPctlTholdMinorRegr(),
+                config.getTrtPctlTholdMajorRegr()
+        ).toString();
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(values.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; hash.length() < CONFIG_HASH_LENGTH; i++) {
+                hash.append(String.format("%02x", digest[i]));
+            }
+
+            return buildNo + "-" + hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    File fileOf(final String key) {
+        return new File(this.dir, key.replaceAll("[^A-Za-z0-9_-]", "_") + SUFFIX);
+    }
+
+    /**
+     * @return the cached report, null if it is not cached or cannot be read.
+     */
+    String load(final String key) {
+        File file = this.fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            String html = IOUtils.toString(in, StandardCharsets.UTF_8);
+            // last modified is the last use, for the eviction
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LoggerProxy.getSysLogger().log(Level.FINE, "Failed to touch " + file);
+            }
+
+            return html;
+        } catch (IOException e) {
+            LoggerProxy.getSysLogger().log(Level.WARNING, "Failed to read " + file + ", ignored.", e);
+            return null;
+        }
+    }
+
+    /**
+     * store a report, then evict the least recently used ones above the size limit.
+     *
+     * @return whether the report was stored.
+     */
+    boolean save(final String key, final String html) {
+        File file = this.fileOf(key);
+        File tmp = new File(this.dir, file.getName() + ".tmp");
+        try {
+            Files.createDirectories(this.dir.toPath());
+            try (OutputStream out = Files.newOutputStream(tmp.toPath());
+                 Writer writer = new BufferedWriter(
+                         new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)
+                 )) {
+                writer.write(html);
+            }
+
+            try {
+                Files.move(
+                        tmp.toPath(),
+                        file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LoggerProxy.getSysLogger().log(Level.WARNING, "Failed to write " + file, e);
+            return false;
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                LoggerProxy.getSysLogger().log(Level.FINE, "Failed to delete " + tmp);
+            }
+        }
+
+        this.evict(file);
+        return true;
+    }
+
+    private void evict(final File keep) {
+        File[] files = this.dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+            if (total > Constants.TRENDING_REPORT_CACHE_MAX_BYTES && !f.equals(keep) && !f.delete()) {
+                LoggerProxy.getSysLogger().log(Level.FINE, "Failed to evict " + f);
+            }
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import com.microfocus.lrc.core.Utils
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import hudson.model.Job
+import hudson.util.DaemonThreadFactory
+import hudson.util.NamingThreadFactory
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.charset.StandardCharsets
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.logging.Level
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Append-only store of the trending data of a job's builds, kept under the job directory
+ * instead of in each build.xml.
+ *
+ * `lrc_trending.idx` is a small header index: a fixed header, then one fixed-size record per build
+ * (build number and time, run, test, tenant digest, transaction count, payload offset and length).
+ * `lrc_trending.dat` holds the payloads, one gzip-compressed JSON [TrendingDataWrapper] per build.
+ * Deleted builds are recorded as tombstones, a record later in the index wins over an earlier one.
+ * Their payloads stay in the data file until the store is compacted, see [compact].
+ *
+ * The index is read once, so the builds having trending data are known without loading any [hudson.model.Run].
+ * Jobs created by earlier versions are migrated in background, see [migrateInBackground].
+ * The migration also moves the trending reports those versions persisted with the builds into [TrendingReportCache].
+ */
+class TrendingStore(private val dir: File) {
+    class Record(
+        val buildNo: Int,
+        val buildTime: Long,
+        val runId: Int,
+        val testId: Int,
+        val tenantDigest: Long,
+        val transactions: Int,
+        val offset: Long,
+        val length: Int,
+    )
+
+    private val indexFile = File(this.dir, INDEX_FILE)
+    private val dataFile = File(this.dir, DATA_FILE)
+
+    // newest build first
+    private var records: TreeMap<Int, Record>? = null
+    private var flags = 0
+
+    @Synchronized
+    fun isMigrated(): Boolean {
+        this.load()
+        return (this.flags and FLAG_MIGRATED) != 0
+    }
+
+    /**
+     * the live records, newest build first.
+     */
+    @Synchronized
+    fun records(): List<Record> {
+        return ArrayList(this.load().values)
+    }
+
+    @Synchronized
+    fun latestBuildNo(): Int? {
+        val loaded = this.load()
+        return if (loaded.isEmpty()) null else loaded.firstKey()
+    }
+
+    /**
+     * the trending data of the build, null if it is not stored or cannot be read.
+     */
+    fun read(buildNo: Int): TrendingDataWrapper? {
+        return this.readPayload(buildNo)
+    }
+
+    fun read(record: Record): TrendingDataWrapper? {
+        return this.readPayload(record.buildNo)
+    }
+
+    private fun readPayload(buildNo: Int): TrendingDataWrapper? {
+        try {
+            // looked up again with the read, a compaction moves the payloads
+            val bytes = synchronized(this) {
+                val record = this.load()[buildNo] ?: return null
+                val bytes = ByteArray(record.length)
+                RandomAccessFile(this.dataFile, "r").use { file ->
+                    file.seek(record.offset)
+                    file.readFully(bytes)
+                }
+                bytes
+            }
+
+            return GZIPInputStream(bytes.inputStream()).reader(StandardCharsets.UTF_8).use { reader ->
+                gson.fromJson(reader, TrendingDataWrapper::class.java)
+            }
+        } catch (e: IOException) {
+            LoggerProxy.sysLogger.log(Level.WARNING, "Failed to read trending data of build #$buildNo.", e)
+        } catch (e: JsonParseException) {
+            LoggerProxy.sysLogger.log(Level.WARNING, "Failed to read trending data of build #$buildNo.", e)
+        }
+
+        return null
+    }
+
+    /**
+     * append the trending data of a build, ignored if the build is stored already.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun append(buildNo: Int, buildTime: Long, wrapper: TrendingDataWrapper) {
+        val loaded = this.load()
+        if (loaded.containsKey(buildNo)) {
+            return
+        }
+
+        val payload = ByteArrayOutputStream()
+        GZIPOutputStream(payload).writer(StandardCharsets.UTF_8).use { writer -> gson.toJson(wrapper, writer) }
+
+        val offset = this.dataFile.length()
+        FileOutputStream(this.dataFile, true).use { out ->
+            payload.writeTo(out)
+            out.fd.sync()
+        }
+
+        val data = wrapper.trendingData
+        val record = Record(
+            buildNo,
+            buildTime,
+            data?.runId ?: 0,
+            data?.testId ?: 0,
+            tenantDigest(wrapper.tenantId),
+            data?.transactions?.size ?: 0,
+            offset,
+            payload.size()
+        )
+        this.appendRecord(record)
+        loaded[buildNo] = record
+    }
+
+    /**
+     * record the deletion of a build.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun remove(buildNo: Int) {
+        val loaded = this.load()
+        if (loaded.remove(buildNo) != null) {
+            this.appendRecord(Record(buildNo, 0, 0, 0, 0, 0, 0, TOMBSTONE))
+            try {
+                this.compactIfWasteful()
+            } catch (e: IOException) {
+                // the build is removed, its payload is left for a later compaction
+                LoggerProxy.sysLogger.log(Level.WARNING, "Failed to compact $dataFile.", e)
+            }
+        }
+    }
+
+    /**
+     * bytes of the data file no live record refers to, the payloads of deleted builds.
+     */
+    @Synchronized
+    fun deadBytes(): Long {
+        val live = this.load().values.sumOf { it.length.toLong() }
+        return maxOf(0L, this.dataFile.length() - live)
+    }
+
+    /**
+     * compact the store once the dead bytes are at least [COMPACT_MIN_DEAD_BYTES] and half of the data file.
+     *
+     * @return whether the store was compacted.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun compactIfWasteful(): Boolean {
+        val dead = this.deadBytes()
+        if (dead < COMPACT_MIN_DEAD_BYTES || dead * 2 < this.dataFile.length()) {
+            return false
+        }
+
+        this.compact()
+        return true
+    }
+
+    /**
+     * rewrite the live records into new files replacing the current ones, without the dead bytes and tombstones.
+     *
+     * The new index is renamed to [COMPACTED_INDEX_FILE] once both new files are complete: an interrupted compaction
+     * is dropped by the next [load] before that point, and completed after it.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun compact() {
+        this.prepareCompaction()
+        this.completeCompaction()
+    }
+
+    /**
+     * write the new files, up to the point from which the compaction is completed even after a crash.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    internal fun prepareCompaction() {
+        val loaded = this.load()
+        val dataTmp = File(this.dir, "$DATA_FILE.tmp")
+        val indexTmp = File(this.dir, "$INDEX_FILE.tmp")
+
+        // oldest build first, as they were appended
+        val compacted = ArrayList<Record>()
+        FileOutputStream(dataTmp).use { out ->
+            if (loaded.isNotEmpty()) {
+                RandomAccessFile(this.dataFile, "r").use { input ->
+                    var offset = 0L
+                    for (record in loaded.descendingMap().values) {
+                        val bytes = ByteArray(record.length)
+                        input.seek(record.offset)
+                        input.readFully(bytes)
+                        out.write(bytes)
+                        compacted.add(
+                            Record(
+                                record.buildNo,
+                                record.buildTime,
+                                record.runId,
+                                record.testId,
+                                record.tenantDigest,
+                                record.transactions,
+                                offset,
+                                record.length
+                            )
+                        )
+                        offset += record.length
+                    }
+                }
+            }
+            out.fd.sync()
+        }
+
+        FileOutputStream(indexTmp).use { out ->
+            val data = DataOutputStream(out.buffered())
+            writeHeader(data, this.flags)
+            compacted.forEach { writeRecord(data, it) }
+            data.flush()
+            out.fd.sync()
+        }
+
+        move(indexTmp, File(this.dir, COMPACTED_INDEX_FILE))
+    }
+
+    @Synchronized
+    @Throws(IOException::class)
+    internal fun completeCompaction() {
+        this.recoverCompaction()
+        this.records = null
+    }
+
+    /**
+     * finish a compaction past its commit point, or drop the files of one interrupted before it.
+     */
+    private fun recoverCompaction() {
+        val compactedIndex = File(this.dir, COMPACTED_INDEX_FILE)
+        val dataTmp = File(this.dir, "$DATA_FILE.tmp")
+        if (compactedIndex.isFile) {
+            if (dataTmp.isFile) {
+                move(dataTmp, this.dataFile)
+            }
+            move(compactedIndex, this.indexFile)
+            return
+        }
+
+        Files.deleteIfExists(dataTmp.toPath())
+        Files.deleteIfExists(File(this.dir, "$INDEX_FILE.tmp").toPath())
+    }
+
+    @Synchronized
+    @Throws(IOException::class)
+    fun markMigrated() {
+        this.load()
+        this.writeHeaderIfMissing()
+        this.flags = this.flags or FLAG_MIGRATED
+        RandomAccessFile(this.indexFile, "rw").use { file ->
+            file.seek(FLAGS_OFFSET)
+            file.writeInt(this.flags)
+        }
+    }
+
+    /**
+     * back to the build history, e.g. when a build could not be appended after the migration.
+     * the flag is cleared in memory even if the index cannot be written.
+     */
+    @Synchronized
+    @Throws(IOException::class)
+    fun clearMigrated() {
+        this.load()
+        if ((this.flags and FLAG_MIGRATED) == 0) {
+            return
+        }
+
+        this.flags = this.flags and FLAG_MIGRATED.inv()
+        RandomAccessFile(this.indexFile, "rw").use { file ->
+            file.seek(FLAGS_OFFSET)
+            file.writeInt(this.flags)
+        }
+    }
+
+    private fun load(): TreeMap<Int, Record> {
+        this.records?.let { return it }
+
+        val loaded = TreeMap<Int, Record>(Comparator.reverseOrder())
+        this.flags = 0
+        try {
+            this.recoverCompaction()
+        } catch (e: IOException) {
+            LoggerProxy.sysLogger.log(Level.WARNING, "Failed to complete the compaction of $indexFile.", e)
+        }
+        if (this.indexFile.isFile) {
+            try {
+                this.readIndex(loaded)
+            } catch (e: IOException) {
+                // set aside, a new store is created by the migration
+                LoggerProxy.sysLogger.log(Level.WARNING, "Failed to read $indexFile, set aside.", e)
+                loaded.clear()
+                this.flags = 0
+                this.indexFile.renameTo(File(this.dir, "$INDEX_FILE.corrupted"))
+                this.dataFile.renameTo(File(this.dir, "$DATA_FILE.corrupted"))
+            }
+        }
+
+        this.records = loaded
+        return loaded
+    }
+
+    private fun readIndex(loaded: TreeMap<Int, Record>) {
+        val indexLength = this.indexFile.length()
+        val count = (indexLength - HEADER_SIZE) / RECORD_SIZE
+        val dataLength = this.dataFile.length()
+        DataInputStream(this.indexFile.inputStream().buffered()).use { input ->
+            if (indexLength < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw IOException("unknown format")
+            }
+            this.flags = input.readInt()
+
+            for (i in 0L until count) {
+                val record = Record(
+                    input.readInt(),
+                    input.readLong(),
+                    input.readInt(),
+                    input.readInt(),
+                    input.readLong(),
+                    input.readInt(),
+                    input.readLong(),
+                    input.readInt()
+                )
+                if (record.length == TOMBSTONE) {
+                    loaded.remove(record.buildNo)
+                } else if (record.offset + record.length <= dataLength) {
+                    loaded[record.buildNo] = record
+                }
+            }
+        }
+
+        // drop a record torn by a crash, so the next one is appended at a record boundary
+        val validLength = HEADER_SIZE + count * RECORD_SIZE
+        if (indexLength > validLength) {
+            RandomAccessFile(this.indexFile, "rw").use { it.setLength(validLength) }
+        }
+    }
+
+    private fun appendRecord(record: Record) {
+        this.writeHeaderIfMissing()
+        FileOutputStream(this.indexFile, true).use { out ->
+            val data = DataOutputStream(out.buffered())
+            writeRecord(data, record)
+            data.flush()
+            out.fd.sync()
+        }
+    }
+
+    private fun writeHeaderIfMissing() {
+        if (this.indexFile.length() >= HEADER_SIZE) {
+            return
+        }
+
+        DataOutputStream(FileOutputStream(this.indexFile).buffered()).use { out -> writeHeader(out, this.flags) }
+    }
+
+    companion object {
+        const val INDEX_FILE = "lrc_trending.idx"
+        const val DATA_FILE = "lrc_trending.dat"
+
+        private const val MAGIC = 0x4C524354
+        private const val VERSION = 1
+        private const val FLAGS_OFFSET = 8L
+        private const val HEADER_SIZE = 12L
+        private const val RECORD_SIZE = 44L
+        private const val FLAG_MIGRATED = 1
+        private const val TOMBSTONE = -1
+        private const val COMPACTED_INDEX_FILE = "$INDEX_FILE.compacted"
+        private const val COMPACT_MIN_DEAD_BYTES = 1L shl 20
+        private val LEGACY_ELEMENTS = listOf("<trendingDataWrapper>", "<trendingReportHTML>")
+
+        private val gson = Gson()
+        private val stores = ConcurrentHashMap<String, TrendingStore>()
+        private val migrating: MutableSet<String> = ConcurrentHashMap.newKeySet()
+
+        // one job at a time, kept off the shared Timer pool
+        private var migrationExecutor: ExecutorService? = null
+
+        @JvmStatic
+        fun of(job: Job<*, *>): TrendingStore {
+            return stores.computeIfAbsent(job.fullName) { TrendingStore(job.rootDir) }
+        }
+
+        /**
+         * whether the job has a trending store, without creating one.
+         */
+        @JvmStatic
+        fun exists(job: Job<*, *>): Boolean {
+            return stores.containsKey(job.fullName) || File(job.rootDir, INDEX_FILE).isFile
+        }
+
+        @JvmStatic
+        fun forget(jobFullName: String) {
+            stores.remove(jobFullName)
+        }
+
+        @JvmStatic
+        fun clear() {
+            stores.clear()
+        }
+
+        /**
+         * identifies the tenant in the index, the first 64 bits of its SHA-256 digest, 0 without tenant.
+         */
+        @JvmStatic
+        fun tenantDigest(tenantId: String?): Long {
+            if (tenantId == null) {
+                return 0
+            }
+
+            return java.lang.Long.parseUnsignedLong(Utils.sha256Hex(tenantId).substring(0, 16), 16)
+        }
+
+        private fun writeHeader(out: DataOutputStream, flags: Int) {
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(flags)
+        }
+
+        private fun writeRecord(out: DataOutputStream, record: Record) {
+            out.writeInt(record.buildNo)
+            out.writeLong(record.buildTime)
+            out.writeInt(record.runId)
+            out.writeInt(record.testId)
+            out.writeLong(record.tenantDigest)
+            out.writeInt(record.transactions)
+            out.writeLong(record.offset)
+            out.writeInt(record.length)
+        }
+
+        private fun move(source: File, target: File) {
+            try {
+                Files.move(
+                    source.toPath(),
+                    target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                )
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        }
+
+        @Synchronized
+        private fun executor(): ExecutorService {
+            val current = migrationExecutor
+            if (current != null && !current.isShutdown) {
+                return current
+            }
+
+            val pool = ThreadPoolExecutor(
+                1,
+                1,
+                60,
+                TimeUnit.SECONDS,
+                LinkedBlockingQueue(),
+                NamingThreadFactory(DaemonThreadFactory(), "LRC trending migration")
+            )
+            pool.allowCoreThreadTimeOut(true)
+            migrationExecutor = pool
+            return pool
+        }
+
+        @JvmStatic
+        @Synchronized
+        fun shutdown() {
+            migrationExecutor?.shutdownNow()
+            migrationExecutor = null
+        }
+
+        /**
+         * move the trending data and reports persisted in the build actions of the job out of the builds,
+         * once, in background.
+         *
+         * @return the migration, null if the job is migrated or being migrated already.
+         */
+        @JvmStatic
+        fun migrateInBackground(job: Job<*, *>): Future<*>? {
+            if (of(job).isMigrated() || !migrating.add(job.fullName)) {
+                return null
+            }
+
+            return executor().submit {
+                try {
+                    migrate(job)
+                } finally {
+                    migrating.remove(job.fullName)
+                }
+            }
+        }
+
+        private fun migrate(job: Job<*, *>) {
+            var moved = 0
+            try {
+                for (buildNo in legacyBuilds(job)) {
+                    val build = job.getBuildByNumber(buildNo) ?: continue
+                    @SuppressWarnings("kotlin:S1874")
+                    val action = build.getAction(TestRunReportBuildAction::class.java) ?: continue
+                    val movedData = action.moveToStore()
+                    if (action.moveReportToCache() || movedData) {
+                        build.save()
+                        moved++
+                    }
+                }
+                of(job).markMigrated()
+                of(job).compactIfWasteful()
+                LoggerProxy.sysLogger.log(
+                    Level.INFO,
+                    "Trending data of $moved builds migrated for project \"${job.fullName}\"."
+                )
+            } catch (e: IOException) {
+                LoggerProxy.sysLogger.log(
+                    Level.WARNING,
+                    "Failed to migrate trending data for project \"${job.fullName}\", will retry.",
+                    e
+                )
+            }
+        }
+
+        /**
+         * the builds still holding trending data or reports in their build.xml, newest first,
+         * found without loading any build.
+         */
+        private fun legacyBuilds(job: Job<*, *>): List<Int> {
+            val dirs = job.buildDir.listFiles() ?: return emptyList()
+            return dirs.mapNotNull { dir ->
+                dir.name.toIntOrNull()?.takeIf { holdsLegacyData(File(dir, "build.xml")) }
+            }.sortedDescending()
+        }
+
+        private fun holdsLegacyData(file: File): Boolean {
+            if (!file.isFile) {
+                return false
+            }
+
+            return try {
+                file.bufferedReader(StandardCharsets.UTF_8).useLines { lines ->
+                    lines.any { line -> LEGACY_ELEMENTS.any { line.contains(it) } }
+                }
+            } catch (e: IOException) {
+                // left to Jenkins loading the build
+                LoggerProxy.sysLogger.log(Level.FINE, "Failed to scan $file.", e)
+                true
+            }
+        }
+    }
+}
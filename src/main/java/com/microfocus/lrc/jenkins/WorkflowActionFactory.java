@@ -47,9 +47,9 @@ public final class WorkflowActionFactory extends TransientActionFactory<Job> {
                                         + "trendingReport %s",
                                 buildAction.getRun().getId(),
                                 buildAction.getTrendingConfig().toString(),
-                                buildAction.getTrendingReportHTML() == null
+                                buildAction.getTrendingReportKey() == null
                                         ? "NULL"
-                                        : buildAction.getTrendingReportHTML().length()
+                                        : buildAction.getTrendingReportKey()
                         )
                 );
             } catch (Exception ignored) {
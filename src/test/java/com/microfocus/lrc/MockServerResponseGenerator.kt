@@ -13,11 +13,21 @@
 package com.microfocus.lrc
 
 import com.google.gson.JsonObject
+import com.microfocus.lrc.core.AuthTokenCache
+import com.microfocus.lrc.core.service.LoadTestMetadataCache
+import com.microfocus.lrc.core.service.RunSession
 import com.microfocus.lrc.jenkins.TestRunBuilderTest
 import okhttp3.mockwebserver.MockResponse
 
 class MockServerResponseGenerator {
     companion object {
+        @JvmStatic
+        fun resetClientCaches() {
+            AuthTokenCache.clear()
+            LoadTestMetadataCache.clear()
+            RunSession.clear()
+        }
+
         @JvmStatic
         fun mockLogin() {
             val responseLogin = MockResponse()
@@ -31,15 +41,6 @@ class MockServerResponseGenerator {
             TestRunBuilderTest.mockserver.enqueue(responseProjects)
         }
 
-        @JvmStatic
-        fun mockReports() {
-            val fakeReportContent = "FAKE_REPORT_CONTENT"
-            val responseReportContent = MockResponse().setBody(fakeReportContent)
-            responseReportContent.setHeader("Content-Type", "application/octet-stream")
-            TestRunBuilderTest.mockserver.enqueue(responseReportContent)
-            TestRunBuilderTest.mockserver.enqueue(responseReportContent)
-        }
-
         @JvmStatic
         fun mockTestRunResults() {
             val responseTestRunResults = MockResponse()
@@ -0,0 +1,199 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.google.gson.JsonObject
+import com.microfocus.lrc.MockServerResponseGenerator
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.io.IOException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ApiClientTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val server = MockWebServer()
+    private val logins = AtomicInteger()
+    private val resourceCalls = AtomicInteger()
+
+    // the token the server accepts, the login hands it out
+    @Volatile
+    private var validToken = "t1"
+
+    @Volatile
+    private var rejectAll = false
+
+    private lateinit var config: ServerConfiguration
+
+    @Before
+    fun setUp() {
+        MockServerResponseGenerator.resetClientCaches()
+        this.server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val authorized = request.getHeader("Cookie") == "LWSSO_COOKIE_KEY=$validToken"
+                when (request.requestUrl?.encodedPath) {
+                    "/v1/auth" -> {
+                        logins.incrementAndGet()
+                        val body = JsonObject()
+                        body.addProperty("token", validToken)
+                        return MockResponse().setBody(body.toString())
+                    }
+                    "/v1/projects" -> return MockResponse().setBody("[]")
+                    "/v1/error" -> return MockResponse().setResponseCode(500).setBody("oops")
+                    "/v1/slow-headers" -> return MockResponse().setBody("{}").setHeadersDelay(5, TimeUnit.SECONDS)
+                    "/v1/slow-body" -> return MockResponse().setBody("{}").setBodyDelay(5, TimeUnit.SECONDS)
+                    "/v1/resource" -> {
+                        resourceCalls.incrementAndGet()
+                        if (rejectAll || !authorized) {
+                            return MockResponse().setResponseCode(401)
+                        }
+                        return MockResponse().setBody("{}")
+                    }
+                }
+
+                return MockResponse().setResponseCode(404)
+            }
+        }
+        this.server.start()
+        this.config = ServerConfiguration(
+            this.server.url("/").toString(), "user", "secret", "FAKE_TENANT_ID", 1, false
+        )
+    }
+
+    @After
+    fun tearDown() {
+        this.server.close()
+        MockServerResponseGenerator.resetClientCaches()
+    }
+
+    @Test
+    fun rejectedCachedTokenIsRefreshed() {
+        ApiClientFactory.getClient(this.config).use { client ->
+            client.get("v1/resource").use { Assert.assertEquals(200, it.code) }
+        }
+        Assert.assertEquals(1, this.logins.get())
+
+        // revoked on the server, still cached
+        this.validToken = "t2"
+        ApiClientFactory.getClient(this.config).use { client ->
+            Assert.assertEquals(1, this.logins.get())
+            client.get("v1/resource").use { Assert.assertEquals(200, it.code) }
+        }
+        Assert.assertEquals(2, this.logins.get())
+
+        // the new token replaced the cached one
+        ApiClientFactory.getClient(this.config).use { client ->
+            client.get("v1/resource").use { Assert.assertEquals(200, it.code) }
+        }
+        Assert.assertEquals(2, this.logins.get())
+    }
+
+    @Test
+    fun rejectedCachedTokenIsRefreshedAsync() {
+        ApiClientFactory.getClient(this.config).close()
+        this.validToken = "t2"
+
+        ApiClientFactory.getClient(this.config).use { client ->
+            client.getAsync("v1/resource").get(10, TimeUnit.SECONDS).use { Assert.assertEquals(200, it.code) }
+        }
+        Assert.assertEquals(2, this.logins.get())
+    }
+
+    private fun waitForIdle(config: ServerConfiguration) {
+        val dispatcher = HttpClientRegistry.acquire(config).dispatcher
+        HttpClientRegistry.release(config)
+        for (i in 0 until 20) {
+            if (dispatcher.runningCallsCount() == 0) {
+                return
+            }
+            Thread.sleep(100)
+        }
+        Assert.fail("the call is still running")
+    }
+
+    @Test
+    fun asyncSuccess() {
+        ApiClientFactory.getClient(this.config).use { client ->
+            val body = client.getAsync("v1/resource", null) { res -> res.use { it.body?.string() } }
+            Assert.assertEquals("{}", body.get(10, TimeUnit.SECONDS))
+        }
+    }
+
+    @Test
+    fun asyncHttpError() {
+        ApiClientFactory.getClient(this.config).use { client ->
+            client.getAsync("v1/error").get(10, TimeUnit.SECONDS).use { res ->
+                Assert.assertEquals(500, res.code)
+                Assert.assertEquals("oops", res.body?.string())
+            }
+
+            val parsed = client.getAsync("v1/error", null) { res ->
+                res.use { throw IOException("Failed: ${it.code}") }
+            }
+            try {
+                parsed.get(10, TimeUnit.SECONDS)
+                Assert.fail("expected an ExecutionException")
+            } catch (e: ExecutionException) {
+                Assert.assertTrue(e.cause is IOException)
+                Assert.assertEquals("Failed: 500", e.cause?.message)
+            }
+        }
+    }
+
+    @Test
+    fun asyncCancelCancelsCall() {
+        ApiClientFactory.getClient(this.config).use { client ->
+            val future = client.getAsync("v1/slow-headers", null) { res -> res.use { it.code } }
+            Thread.sleep(300)
+
+            Assert.assertTrue(future.cancel(true))
+            this.waitForIdle(this.config)
+        }
+    }
+
+    @Test
+    fun asyncCancelClosesResponse() {
+        ApiClientFactory.getClient(this.config).use { client ->
+            // the headers arrived, reading the body blocks
+            val future = client.getAsync("v1/slow-body", null) { res -> res.use { it.body?.string() } }
+            Thread.sleep(500)
+
+            Assert.assertTrue(future.cancel(true))
+            this.waitForIdle(this.config)
+        }
+    }
+
+    @Test
+    fun retriedOnceOnly() {
+        this.rejectAll = true
+        ApiClientFactory.getClient(this.config).use { client ->
+            client.get("v1/resource").use { Assert.assertEquals(401, it.code) }
+        }
+
+        Assert.assertEquals(2, this.resourceCalls.get())
+        Assert.assertEquals(2, this.logins.get())
+    }
+}
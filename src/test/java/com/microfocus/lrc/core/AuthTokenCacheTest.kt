@@ -0,0 +1,112 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import org.junit.After
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.nio.charset.StandardCharsets
+import java.util.Base64
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AuthTokenCacheTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    @After
+    fun cleanup() {
+        AuthTokenCache.clear()
+    }
+
+    private fun config(password: String): ServerConfiguration {
+        return ServerConfiguration("https://lrc.example.com", "user", password, "FAKE_TENANT_ID", 1, false)
+    }
+
+    private fun token(value: String): AuthTokenCache.AuthToken {
+        return AuthTokenCache.AuthToken(AuthTokenCache.TokenType.BEARER, value)
+    }
+
+    @Test
+    fun concurrentCallersShareOneLogin() {
+        val logins = AtomicInteger()
+        val release = CountDownLatch(1)
+        val pool = Executors.newFixedThreadPool(4)
+        try {
+            val results = (1..4).map {
+                pool.submit<AuthTokenCache.AuthToken> {
+                    AuthTokenCache.getOrLogin(config("secret")) {
+                        logins.incrementAndGet()
+                        release.await(10, TimeUnit.SECONDS)
+                        token("t1")
+                    }
+                }
+            }
+            Thread.sleep(200)
+            release.countDown()
+
+            results.forEach { Assert.assertEquals("t1", it.get(10, TimeUnit.SECONDS).value) }
+            Assert.assertEquals(1, logins.get())
+        } finally {
+            pool.shutdownNow()
+        }
+    }
+
+    @Test
+    fun refreshReplacesTokenAndValidation() {
+        AuthTokenCache.getOrLogin(config("secret")) { token("t1") }
+        AuthTokenCache.markTenantValidated(config("secret"))
+        Assert.assertTrue(AuthTokenCache.isTenantValidated(config("secret")))
+
+        // e.g. after a 401
+        val refreshed = AuthTokenCache.refresh(config("secret")) { token("t2") }
+        Assert.assertEquals("t2", refreshed.value)
+        Assert.assertEquals("t2", AuthTokenCache.getOrLogin(config("secret")) { token("t3") }.value)
+        Assert.assertFalse(AuthTokenCache.isTenantValidated(config("secret")))
+    }
+
+    @Test
+    fun keyedBySecret() {
+        AuthTokenCache.getOrLogin(config("secret")) { token("t1") }
+        Assert.assertEquals("t2", AuthTokenCache.getOrLogin(config("other")) { token("t2") }.value)
+    }
+
+    @Test
+    fun expiredTokenIsNotReused() {
+        AuthTokenCache.getOrLogin(config("secret")) {
+            AuthTokenCache.AuthToken(AuthTokenCache.TokenType.BEARER, "t1", System.currentTimeMillis() - 1)
+        }
+        Assert.assertEquals("t2", AuthTokenCache.getOrLogin(config("secret")) { token("t2") }.value)
+    }
+
+    @Test
+    fun expiryOfJwt() {
+        val exp = System.currentTimeMillis() / 1000 + 3600
+        val claims = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("{\"exp\":$exp}".toByteArray(StandardCharsets.UTF_8))
+        Assert.assertEquals(
+            exp * 1000 - Constants.AUTH_TOKEN_EXPIRY_MARGIN,
+            AuthTokenCache.expiryOf("header.$claims.signature")
+        )
+
+        val opaque = AuthTokenCache.expiryOf("opaque-token")
+        Assert.assertTrue(opaque <= System.currentTimeMillis() + Constants.AUTH_TOKEN_TTL)
+        Assert.assertTrue(opaque > System.currentTimeMillis())
+    }
+}
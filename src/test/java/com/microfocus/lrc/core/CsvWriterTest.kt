@@ -0,0 +1,82 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.microfocus.lrc.core.entity.TestRunTransactionsResponse
+import com.microfocus.lrc.core.service.ReportDownloader
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.zip.GZIPInputStream
+
+class CsvWriterTest {
+
+    private fun tx(name: String, scriptName: String = "script"): TestRunTransactionsResponse {
+        return TestRunTransactionsResponse(
+            name, 1, scriptName, 0.1, 0.5, 0.3, 0.45, 0.0, "N/A", 3.0, 0.01, 10, 0, 0.0
+        )
+    }
+
+    @Test
+    fun escapeFields() {
+        assert(CsvWriter.escape("plain") == "plain")
+        assert(CsvWriter.escape("a,b") == "\"a,b\"")
+        assert(CsvWriter.escape("say \"hi\"") == "\"say \"\"hi\"\"\"")
+        assert(CsvWriter.escape("two\nlines") == "\"two\nlines\"")
+    }
+
+    @Test
+    fun writeTransactions() {
+        val out = ByteArrayOutputStream()
+        ReportDownloader.writeCsv(listOf(tx("login, home", "script \"A\"")), out)
+        val lines = out.toString("UTF-8").split("\r\n")
+
+        assert(lines[0].startsWith("Script Name,Transaction,%Breakers,"))
+        assert(lines[1].startsWith("\"script \"\"A\"\"\",\"login, home\",0.0,N/A,"))
+        assert(lines[2].isEmpty())
+    }
+
+    @Test
+    fun customColumnsAndGzip() {
+        val out = ByteArrayOutputStream()
+        val columns = listOf(
+            CsvWriter.Column<TestRunTransactionsResponse>("Transaction") { it.name },
+            CsvWriter.Column("Passed") { it.passed },
+        )
+        ReportDownloader.writeCsv(listOf(tx("login")), out, columns, true)
+
+        val csv = GZIPInputStream(ByteArrayInputStream(out.toByteArray())).reader().readText()
+        assert(csv == "Transaction,Passed\r\nlogin,10\r\n")
+    }
+
+    @Test
+    fun streamManyTransactions() {
+        var size = 0L
+        val sink = object : OutputStream() {
+            override fun write(b: Int) {
+                size += 1
+            }
+
+            override fun write(b: ByteArray, off: Int, len: Int) {
+                size += len
+            }
+        }
+
+        val count = 50_000
+        val transactions = generateSequence(0) { it + 1 }.take(count).map { tx("transaction $it") }
+        ReportDownloader.writeCsv(transactions.asIterable(), sink)
+
+        assert(size > count * 50L)
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.microfocus.lrc.core.entity.ProxyConfiguration
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import org.junit.After
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+
+class HttpClientRegistryTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    @After
+    fun cleanup() {
+        HttpClientRegistry.shutdown()
+    }
+
+    private fun config(tenantId: String = "FAKE_TENANT_ID", proxyPassword: String? = null): ServerConfiguration {
+        val config = ServerConfiguration("https://lrc.example.com", "user", "secret", tenantId, 1, false)
+        if (proxyPassword != null) {
+            config.proxyConfiguration = ProxyConfiguration("proxy.example.com", 8080, "proxy_user", proxyPassword)
+        }
+
+        return config
+    }
+
+    private fun expired(): Long {
+        return System.currentTimeMillis() + Constants.HTTP_CLIENT_IDLE_TIMEOUT + 1
+    }
+
+    @Test
+    fun oneClientPerServer() {
+        val client = HttpClientRegistry.acquire(config())
+        Assert.assertSame(client, HttpClientRegistry.acquire(config()))
+        Assert.assertNotSame(client, HttpClientRegistry.acquire(config("OTHER_TENANT")))
+
+        val proxied = HttpClientRegistry.acquire(config(proxyPassword = "p1"))
+        Assert.assertNotSame(client, proxied)
+        Assert.assertSame(proxied, HttpClientRegistry.acquire(config(proxyPassword = "p1")))
+        Assert.assertNotSame(proxied, HttpClientRegistry.acquire(config(proxyPassword = "p2")))
+    }
+
+    @Test
+    fun sharedDispatcher() {
+        val client = HttpClientRegistry.acquire(config())
+        val other = HttpClientRegistry.acquire(config("OTHER_TENANT"))
+
+        Assert.assertSame(client.dispatcher, other.dispatcher)
+        Assert.assertNotSame(client.connectionPool, other.connectionPool)
+        Assert.assertEquals(Constants.HTTP_MAX_REQUESTS, client.dispatcher.maxRequests)
+    }
+
+    @Test
+    fun evictsOnlyReleasedClients() {
+        val held = HttpClientRegistry.acquire(config())
+        val released = HttpClientRegistry.acquire(config("OTHER_TENANT"))
+        HttpClientRegistry.release(config("OTHER_TENANT"))
+
+        // e.g. still polled by a long run
+        HttpClientRegistry.evictIdle(expired())
+
+        Assert.assertSame(held, HttpClientRegistry.acquire(config()))
+        Assert.assertNotSame(released, HttpClientRegistry.acquire(config("OTHER_TENANT")))
+    }
+
+    @Test
+    fun releasedByAllHolders() {
+        val client = HttpClientRegistry.acquire(config())
+        HttpClientRegistry.acquire(config())
+        HttpClientRegistry.release(config())
+
+        HttpClientRegistry.evictIdle(expired())
+        Assert.assertSame(client, HttpClientRegistry.acquire(config()))
+
+        repeat(2) { HttpClientRegistry.release(config()) }
+        HttpClientRegistry.evictIdle(expired())
+        Assert.assertNotSame(client, HttpClientRegistry.acquire(config()))
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.google.gson.JsonSyntaxException
+import com.microfocus.lrc.core.entity.TestRunTransactionsResponse
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okhttp3.ResponseBody.Companion.asResponseBody
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.Buffer
+import okio.Source
+import okio.Timeout
+import okio.buffer
+import org.junit.Assert
+import org.junit.Test
+import java.io.IOException
+
+class JsonDecoderTest {
+
+    private fun response(body: String): Response {
+        return this.response(body.toResponseBody("application/json".toMediaType()))
+    }
+
+    private fun response(body: ResponseBody): Response {
+        return Response.Builder()
+            .request(Request.Builder().url("http://localhost/").build())
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .body(body)
+            .build()
+    }
+
+    // the connection is reset after the first bytes of the body
+    private fun resetAfter(prefix: String): Response {
+        val source = object : Source {
+            private var sent = false
+
+            override fun read(sink: Buffer, byteCount: Long): Long {
+                if (this.sent) {
+                    throw IOException("connection reset")
+                }
+                this.sent = true
+                sink.writeUtf8(prefix)
+                return prefix.length.toLong()
+            }
+
+            override fun timeout(): Timeout = Timeout.NONE
+
+            override fun close() {
+                // nothing to release
+            }
+        }
+
+        return this.response(source.buffer().asResponseBody("application/json".toMediaType()))
+    }
+
+    @Test
+    fun decodeArray() {
+        val str =
+            "[{\"name\":\"Actions_Transaction\",\"loadTestScriptId\":4403,\"scriptName\":\"Kafka3\",\"breakers\":0,\"slaStatus\":\"N/A\",\"slaThreshold\":null,\"slaTrend\":\"0.5\",\"passed\":2,\"failed\":0,\"avgTRT\":10.03,\"minTRT\":10.02,\"maxTRT\":10.04,\"percentileTRT\":10.04,\"stdDeviation\":0.0068}," +
+                    "{\"name\":\"vuser_end_Transaction\",\"loadTestScriptId\":4404,\"scriptName\":\"Kafka2\",\"breakers\":0,\"slaStatus\":\"N/A\",\"slaThreshold\":3,\"slaTrend\":-1,\"passed\":1,\"failed\":0,\"avgTRT\":30.0,\"minTRT\":30.0,\"maxTRT\":30.0,\"percentileTRT\":30.0,\"stdDeviation\":0}]"
+        val transactions = JsonDecoder.decodeArray(response(str), TestRunTransactionsResponse::class.java)
+
+        assert(transactions.size == 2)
+        assert(transactions[0].slaThreshold == 0.0)
+        assert(transactions[0].slaTrend == 0.5)
+        assert(transactions[1].loadTestScriptId == 4404)
+        assert(transactions[1].slaThreshold == 3.0)
+    }
+
+    @Test
+    fun emptyMetricIsNotZero() {
+        // not read as a real 0 in trending and the JUnit XML
+        try {
+            val str = "[{\"name\":\"tx\",\"avgTRT\":\"\"}]"
+            JsonDecoder.decodeArray(response(str), TestRunTransactionsResponse::class.java)
+            assert(false)
+        } catch (e: JsonSyntaxException) {
+            assert(e.cause is NumberFormatException)
+        }
+    }
+
+    @Test
+    fun decodeNullArray() {
+        assert(JsonDecoder.decodeArray(response("null"), TestRunTransactionsResponse::class.java).isEmpty())
+    }
+
+    @Test(expected = JsonSyntaxException::class)
+    fun decodeMalformedArray() {
+        JsonDecoder.decodeArray(response("{\"message\":\"error\"}"), TestRunTransactionsResponse::class.java)
+    }
+
+    @Test(expected = JsonSyntaxException::class)
+    fun decodeMalformedObject() {
+        JsonDecoder.decode(response("<html>login</html>"), Map::class.java)
+    }
+
+    @Test(expected = JsonSyntaxException::class)
+    fun decodeEmptyObject() {
+        JsonDecoder.decode(response(""), Map::class.java)
+    }
+
+    @Test
+    fun transportErrorIsNotSyntaxError() {
+        try {
+            JsonDecoder.decode(resetAfter("{\"status\":"), Map::class.java)
+            Assert.fail("expected an IOException")
+        } catch (e: IOException) {
+            Assert.assertEquals("connection reset", e.message)
+        }
+
+        try {
+            JsonDecoder.decodeArray(resetAfter("[1,"), Int::class.javaObjectType)
+            Assert.fail("expected an IOException")
+        } catch (e: IOException) {
+            Assert.assertEquals("connection reset", e.message)
+        }
+    }
+
+    @Test
+    fun peekForLogIsCapped() {
+        val res = response("[" + "1,".repeat(Constants.HTTP_LOG_BODY_LIMIT.toInt()) + "1]")
+        val logged = JsonDecoder.peekForLog(res)
+
+        assert(logged.endsWith("(truncated)"))
+        assert(logged.length < Constants.HTTP_LOG_BODY_LIMIT + 32)
+        assert(JsonDecoder.decodeArray(res, Int::class.javaObjectType).size == Constants.HTTP_LOG_BODY_LIMIT.toInt() + 1)
+    }
+}
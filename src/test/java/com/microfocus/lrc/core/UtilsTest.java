@@ -51,4 +51,14 @@ public class UtilsTest {
         assertFalse(Utils.isValidLRCTenant(""));
         assertFalse(Utils.isValidLRCTenant("123456789012345678901"));
     }
+
+    @Test
+    public void sha256Hex() {
+        assertEquals(
+                "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                Utils.sha256Hex("")
+        );
+        assertEquals(64, Utils.sha256Hex("secret").length());
+        assertNotEquals(Utils.sha256Hex("secret"), Utils.sha256Hex("secret2"));
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core
+
+import com.microfocus.lrc.core.entity.LoadTest
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.TestRunStatus
+import com.microfocus.lrc.core.entity.TestRunTransactionsResponse
+import org.junit.Test
+import org.w3c.dom.Element
+import java.io.ByteArrayInputStream
+import javax.xml.parsers.DocumentBuilderFactory
+
+class XmlReportTest {
+
+    @Test
+    fun testCasePerTransaction() {
+        val loadTest = LoadTest(2238, 2)
+        loadTest.name = "Kafka & <friends>"
+        val testRun = LoadTestRun(2835, loadTest)
+        testRun.statusEnum = TestRunStatus.FAILED
+        testRun.transactions = arrayOf(
+            TestRunTransactionsResponse(
+                "login", 1, "web.script", 0.1, 5.2, 2.5, 4.9, 20.0, "Failed", 3.0, 0.4, 8, 2, 0.1
+            ),
+            TestRunTransactionsResponse(
+                "logout", 1, "web.script", 0.1, 0.3, 0.2, 0.25, 0.0, "Passed", 3.0, 0.01, 10, 0, 0.0
+            ),
+        )
+
+        val content = XmlReport.write(testRun, "http://report", "http://dashboard", "SLA was breached")
+        val xml = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(ByteArrayInputStream(content))
+
+        val suite = xml.documentElement
+        assert(suite.getAttribute("name") == "Kafka & <friends>")
+        assert(suite.getAttribute("tests") == "3")
+        assert(suite.getAttribute("failures") == "2")
+
+        val testcases = xml.getElementsByTagName("testcase")
+        assert(testcases.length == 3)
+        val login = testcases.item(1) as Element
+        assert(login.getAttribute("name") == "login")
+        assert(login.getAttribute("classname") == "com.microfocus.lrc.Test.web_script")
+        assert(login.getElementsByTagName("failure").length == 1)
+        assert((testcases.item(2) as Element).getElementsByTagName("failure").length == 0)
+        assert((testcases.item(0) as Element).textContent.trim() == "SLA was breached")
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.Constants
+import org.junit.After
+import org.junit.Test
+
+class LoadTestMetadataCacheTest {
+
+    private fun key(
+        testId: Int,
+        kind: LoadTestMetadataCache.Kind = LoadTestMetadataCache.Kind.PERCENTILE,
+        username: String = "user"
+    ) = LoadTestMetadataCache.CacheKey("http://localhost", "FAKE_TENANT_ID", username, "digest", 1, testId, kind)
+
+    @After
+    fun tearDown() {
+        LoadTestMetadataCache.clear()
+    }
+
+    @Test
+    fun hitAndValidators() {
+        assert(LoadTestMetadataCache.getFresh<Int>(key(1)) == null)
+        assert(LoadTestMetadataCache.validators(key(1)).isEmpty())
+
+        LoadTestMetadataCache.put(key(1), 90, "\"v1\"", null)
+        assert(LoadTestMetadataCache.getFresh<Int>(key(1)) == 90)
+        assert(LoadTestMetadataCache.getFresh<Int>(key(1, LoadTestMetadataCache.Kind.TRANSACTIONS)) == null)
+        assert(LoadTestMetadataCache.getFresh<Int>(key(1, username = "other")) == null)
+        assert(LoadTestMetadataCache.validators(key(1)) == mapOf("If-None-Match" to "\"v1\""))
+        assert(LoadTestMetadataCache.revalidated<Int>(key(1)) == 90)
+        assert(LoadTestMetadataCache.stats().startsWith("1 hits, 1 revalidated, 1 misses"))
+    }
+
+    @Test
+    fun evictLeastRecentlyUsed() {
+        for (i in 0..Constants.LOAD_TEST_CACHE_MAX_ENTRIES) {
+            LoadTestMetadataCache.put(key(i), i, null, null)
+            // keep the first entry recently used
+            LoadTestMetadataCache.getFresh<Int>(key(0))
+        }
+
+        assert(LoadTestMetadataCache.getFresh<Int>(key(0)) == 0)
+        assert(LoadTestMetadataCache.getFresh<Int>(key(1)) == null)
+        assert(LoadTestMetadataCache.getFresh<Int>(key(Constants.LOAD_TEST_CACHE_MAX_ENTRIES)) != null)
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.google.gson.JsonObject
+import com.microfocus.lrc.MockServerResponseGenerator
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.ApiClientFactory
+import com.microfocus.lrc.core.entity.LoadTest
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import com.microfocus.lrc.core.entity.TestRunStatus
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+class LoadTestRunServiceTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val server = MockWebServer()
+    private lateinit var apiClient: ApiClient
+
+    @Before
+    fun setUp() {
+        MockServerResponseGenerator.resetClientCaches()
+        this.server.start()
+
+        val login = JsonObject()
+        login.addProperty("token", "fake_token")
+        this.server.enqueue(MockResponse().setBody(login.toString()))
+        this.server.enqueue(MockResponse().setBody("[]"))
+
+        val config = ServerConfiguration(
+            this.server.url("/").toString(), "user", "secret", "FAKE_TENANT_ID", 1, false
+        )
+        this.apiClient = ApiClientFactory.getClient(config)
+        // login and tenant validation
+        this.server.takeRequest(1, TimeUnit.SECONDS)
+        this.server.takeRequest(1, TimeUnit.SECONDS)
+    }
+
+    @After
+    fun tearDown() {
+        this.apiClient.close()
+        this.server.close()
+        MockServerResponseGenerator.resetClientCaches()
+    }
+
+    @Test
+    fun pollRevalidatesWithETag() {
+        val status = JsonObject()
+        status.addProperty("status", TestRunStatus.RUNNING.statusName)
+        status.addProperty("uiStatus", TestRunStatus.RUNNING.statusName)
+        status.addProperty("isTerminated", false)
+        this.server.enqueue(MockResponse().setBody(status.toString()).setHeader("ETag", "\"v1\""))
+        this.server.enqueue(MockResponse().setResponseCode(304))
+
+        val service = LoadTestRunService(this.apiClient, LoggerProxy())
+        val testRun = LoadTestRun(7, LoadTest(1, 1))
+
+        service.poll(testRun)
+        val first = this.server.takeRequest(1, TimeUnit.SECONDS)!!
+        Assert.assertEquals("/v1/test-runs/7/status", first.requestUrl?.encodedPath)
+        Assert.assertNull(first.getHeader("If-None-Match"))
+        Assert.assertEquals(TestRunStatus.RUNNING, testRun.statusEnum)
+        Assert.assertEquals("\"v1\"", testRun.statusETag)
+
+        // not modified, the run is kept as it is
+        service.poll(testRun)
+        val second = this.server.takeRequest(1, TimeUnit.SECONDS)!!
+        Assert.assertEquals("/v1/test-runs/7/status", second.requestUrl?.encodedPath)
+        Assert.assertEquals("\"v1\"", second.getHeader("If-None-Match"))
+        Assert.assertEquals(TestRunStatus.RUNNING, testRun.statusEnum)
+        Assert.assertEquals("\"v1\"", testRun.statusETag)
+    }
+
+    @Test
+    fun malformedStatusIsUnauthorized() {
+        // e.g. the login page
+        this.server.enqueue(MockResponse().setBody("<html>login</html>"))
+
+        try {
+            LoadTestRunService(this.apiClient, LoggerProxy()).poll(LoadTestRun(7, LoadTest(1, 1)))
+            Assert.fail("expected an IOException")
+        } catch (e: IOException) {
+            Assert.assertEquals("Unauthorized", e.message)
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.google.gson.JsonObject
+import com.microfocus.lrc.MockServerResponseGenerator
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.ApiClientFactory
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.util.concurrent.TimeUnit
+
+class LoadTestServiceTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val server = MockWebServer()
+    private lateinit var apiClient: ApiClient
+
+    @Before
+    fun setUp() {
+        MockServerResponseGenerator.resetClientCaches()
+        this.server.start()
+
+        val login = JsonObject()
+        login.addProperty("token", "fake_token")
+        this.server.enqueue(MockResponse().setBody(login.toString()))
+        this.server.enqueue(MockResponse().setBody("[]"))
+
+        val config = ServerConfiguration(
+            this.server.url("/").toString(), "user", "secret", "FAKE_TENANT_ID", 1, false
+        )
+        this.apiClient = ApiClientFactory.getClient(config)
+        // login and tenant validation
+        this.server.takeRequest(1, TimeUnit.SECONDS)
+        this.server.takeRequest(1, TimeUnit.SECONDS)
+    }
+
+    @After
+    fun tearDown() {
+        this.apiClient.close()
+        this.server.close()
+        MockServerResponseGenerator.resetClientCaches()
+    }
+
+    @Test
+    fun cachedValuesAreCopied() {
+        this.server.enqueue(MockResponse().setBody("{\"name\":\"fake_load_test\"}"))
+        this.server.enqueue(
+            MockResponse().setBody(
+                "[{\"id\":1,\"transactionName\":\"login\"},{\"id\":2,\"transactionName\":\"logout\"}]"
+            )
+        )
+        val service = LoadTestService(this.apiClient, LoggerProxy())
+
+        val loadTest = service.fetch(1)
+        loadTest.name = "changed"
+        Assert.assertEquals("fake_load_test", service.fetch(1).name)
+
+        val transactions = service.getTransactions(1)
+        transactions[0] = transactions[1]
+        val cached = service.getTransactions(1)
+        Assert.assertEquals(listOf("login", "logout"), cached.map { it.transactionName })
+        Assert.assertNotSame(cached, service.getTransactionsAsync(1).get(1, TimeUnit.SECONDS))
+
+        // fetched once, then served from the cache
+        Assert.assertEquals(4, this.server.requestCount)
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.entity.LoadTest
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.TestRunStatus
+import org.junit.Test
+import kotlin.random.Random
+
+class PollingStrategyTest {
+
+    private var now = 0L
+
+    private fun strategy(): AdaptivePollingStrategy {
+        return AdaptivePollingStrategy(
+            fastInterval = 3000,
+            baseInterval = 10000,
+            maxInterval = 60000,
+            errorInterval = 2000,
+            random = Random(42),
+            clock = { now }
+        )
+    }
+
+    private fun testRun(status: TestRunStatus): LoadTestRun {
+        val testRun = LoadTestRun(1, LoadTest(1, 1))
+        testRun.statusEnum = status
+        return testRun
+    }
+
+    @Test
+    fun fastWhileInitializingAndStopping() {
+        val strategy = strategy()
+        arrayOf(TestRunStatus.INITIALIZING, TestRunStatus.STOPPING, TestRunStatus.PASSED).forEach {
+            val delay = strategy.nextDelay(testRun(it))
+            assert(delay in 2700..3300)
+        }
+    }
+
+    @Test
+    fun backOffDuringLongRunningPhase() {
+        val strategy = strategy()
+        val running = testRun(TestRunStatus.RUNNING)
+
+        now = 0
+        assert(strategy.nextDelay(running) in 9000..11000)
+        now = 15 * 60 * 1000
+        assert(strategy.nextDelay(running) in 27000..33000)
+        now = 2 * 60 * 60 * 1000
+        assert(strategy.nextDelay(running) in 54000..66000)
+
+        // leaving RUNNING resets the phase
+        assert(strategy.nextDelay(testRun(TestRunStatus.STOPPING)) in 2700..3300)
+        assert(strategy.nextDelay(running) in 9000..11000)
+    }
+
+    @Test
+    fun jitteredExponentialErrorBackoff() {
+        val strategy = strategy()
+        assert(strategy.errorDelay(1) in 1000..2000)
+        assert(strategy.errorDelay(2) in 2000..4000)
+        assert(strategy.errorDelay(3) in 4000..8000)
+        assert(strategy.errorDelay(100) in 30000..60000)
+
+        val delays = (1..20).map { strategy.errorDelay(4) }.toSet()
+        assert(delays.size > 1)
+    }
+
+    @Test
+    fun fixedStrategy() {
+        val strategy = FixedPollingStrategy(100)
+        assert(strategy.nextDelay(testRun(TestRunStatus.RUNNING)) == 100L)
+        assert(strategy.errorDelay(5) == 100L)
+    }
+}
@@ -13,10 +13,215 @@
 package com.microfocus.lrc.core.service
 
 import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import com.microfocus.lrc.MockServerResponseGenerator
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.ApiClientFactory
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.HttpClientRegistry
 import com.microfocus.lrc.core.entity.*
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.jvnet.hudson.test.JenkinsRule
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.PrintStream
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class ReportDownloaderTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    @get:Rule
+    var folder = TemporaryFolder()
+
+    private val server = MockWebServer()
+    private val handlers = ConcurrentHashMap<String, (RecordedRequest) -> MockResponse>()
+    private lateinit var apiClient: ApiClient
+
+    @Before
+    fun setUp() {
+        MockServerResponseGenerator.resetClientCaches()
+        this.server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val path = request.requestUrl?.encodedPath ?: ""
+                return when (path) {
+                    "/v1/auth" -> json("token", "fake_token")
+                    "/v1/projects" -> MockResponse().setBody("[]")
+                    else -> handlers[path]?.invoke(request) ?: MockResponse().setResponseCode(404)
+                }
+            }
+        }
+        this.server.start()
+
+        val config = ServerConfiguration(
+            this.server.url("/").toString(), "user", "secret", "FAKE_TENANT_ID", 1, false
+        )
+        this.apiClient = ApiClientFactory.getClient(config)
+    }
+
+    @After
+    fun tearDown() {
+        this.apiClient.close()
+        this.server.close()
+        MockServerResponseGenerator.resetClientCaches()
+    }
+
+    private fun json(property: String, value: Any): MockResponse {
+        val body = JsonObject()
+        body.addProperty(property, value.toString())
+        return MockResponse().setHeader("Content-Type", Constants.APPLICATION_JSON).setBody(body.toString())
+    }
+
+    private fun inProgress(): MockResponse {
+        return json("message", "In progress")
+    }
+
+    private fun report(content: String): MockResponse {
+        return MockResponse().setHeader("Content-Type", "application/octet-stream").setBody(content)
+    }
+
+    private fun downloader(): ReportDownloader {
+        return ReportDownloader(this.apiClient, LoggerProxy(), TestRunOptions(1, false, false, false, true))
+    }
+
+    /**
+     * run #7, the CSV report is #11 and the PDF report #12.
+     */
+    private fun requestReports() {
+        this.handlers["/v1/test-runs/7/reports"] = { request ->
+            val type = JsonParser.parseString(request.body.readUtf8()).asJsonObject["reportType"].asString
+            json("reportId", if (type == "csv") 11 else 12)
+        }
+    }
+
+    @Test
+    fun oneDeadlineForAllReports() {
+        this.requestReports()
+        val csvPolls = AtomicInteger()
+        val pdfPolls = AtomicInteger()
+        this.handlers["/v1/test-runs/reports/11"] = {
+            if (csvPolls.incrementAndGet() < 3) inProgress() else report("csv content")
+        }
+        this.handlers["/v1/test-runs/reports/12"] = {
+            pdfPolls.incrementAndGet()
+            inProgress()
+        }
+
+        val testRun = LoadTestRun(7, LoadTest(1, 1))
+        val started = System.currentTimeMillis()
+        this.downloader().download(testRun, arrayOf("csv", "pdf"), folder.root)
+        val elapsed = System.currentTimeMillis() - started
+
+        // PDF_REPORT_READY_MAX_RETRY polls of 100ms in test mode, for both reports together
+        val deadline = Constants.PDF_REPORT_READY_MAX_RETRY * 100
+        Assert.assertTrue("waited $elapsed ms", elapsed >= deadline && elapsed < deadline * 2)
+
+        val csv = "lrc_report_FAKE_TENANT_ID-7.csv"
+        Assert.assertEquals(setOf(csv), testRun.reportFiles.keys)
+        Assert.assertEquals("csv content", File(folder.root, csv).readText())
+        this.assertReportFile(testRun, folder.root, csv)
+        Assert.assertFalse(File(folder.root, "lrc_report_FAKE_TENANT_ID-7.pdf").exists())
+        Assert.assertEquals(3, csvPolls.get())
+        Assert.assertTrue(pdfPolls.get() > 3)
+    }
+
+    /**
+     * the download threads still checking or saving a report.
+     */
+    private fun busyDownloadThreads(): Set<Thread> {
+        return Thread.getAllStackTraces().filter { (thread, stack) ->
+            thread.name.startsWith("LRC report download") && stack.any {
+                it.className.startsWith(ReportDownloader::class.java.name) ||
+                        it.className.startsWith(ResumableDownloader::class.java.name)
+            }
+        }.keys
+    }
+
+    @Test
+    fun failedCheckCancelsSiblings() {
+        this.requestReports()
+        val pdfRequests = AtomicInteger()
+        this.handlers["/v1/test-runs/reports/11"] = {
+            json("message", "Failed").setHeadersDelay(500, TimeUnit.MILLISECONDS)
+        }
+        // ready, but its content trickles in for a minute
+        this.handlers["/v1/test-runs/reports/12"] = {
+            pdfRequests.incrementAndGet()
+            report("x".repeat(1024)).throttleBody(16, 1, TimeUnit.SECONDS)
+        }
+
+        val testRun = LoadTestRun(7, LoadTest(1, 1))
+        val started = System.currentTimeMillis()
+        val e = Assert.assertThrows(Exception::class.java) {
+            this.downloader().download(testRun, arrayOf("csv", "pdf"), folder.root)
+        }
+        Assert.assertTrue(e.message, e.message!!.contains("Report #11 invalid status"))
+        Assert.assertTrue(System.currentTimeMillis() - started < 10_000)
+
+        // the PDF download is aborted and not resumed, its thread goes back to the pool
+        val released = System.currentTimeMillis() + 10_000
+        while (this.busyDownloadThreads().isNotEmpty() && System.currentTimeMillis() < released) {
+            Thread.sleep(50)
+        }
+        Assert.assertEquals(emptySet<Thread>(), this.busyDownloadThreads())
+        Assert.assertEquals(1, pdfRequests.get())
+        Assert.assertTrue(testRun.reportFiles.isEmpty())
+        Assert.assertEquals(emptyList<String>(), folder.root.list()!!.toList())
+    }
+
+    @Test
+    fun slowAndFailedSlaLookupsAreLeftOut() {
+        this.handlers["/v1/projects/1/load-tests/1/sla/percentile"] = {
+            json("percentile", 90).setHeadersDelay(30, TimeUnit.SECONDS)
+        }
+        this.handlers["/v1/projects/1/load-tests/1/transactions"] = { MockResponse().setBody("[]") }
+        this.handlers["/v1/test-runs/7/runtime/trt-summary"] = { MockResponse().setResponseCode(500) }
+
+        val testRun = LoadTestRun(7, LoadTest(1, 1))
+        testRun.statusEnum = TestRunStatus.FAILED
+        testRun.hasReport = true
+        testRun.transactions = arrayOf(this.transaction())
+
+        val log = ByteArrayOutputStream()
+        val downloader = ReportDownloader(
+            this.apiClient,
+            LoggerProxy(PrintStream(log, true)),
+            TestRunOptions(1, false, false, false, true),
+            1000
+        )
+        val started = System.currentTimeMillis()
+        downloader.genXmlFile(testRun, folder.root)
+        Assert.assertTrue(System.currentTimeMillis() - started < 10_000)
+
+        val output = log.toString()
+        Assert.assertTrue(output, output.contains("Fetching percentile for SLA info timed out"))
+        Assert.assertTrue(output, output.contains("Failed to fetch TRT summary for SLA info"))
+        this.assertReportFile(testRun, folder.root, "lrc_report_FAKE_TENANT_ID-7.xml")
+
+        // the timed out lookup is cancelled with its call
+        val dispatcher = HttpClientRegistry.acquire(this.apiClient.getServerConfiguration()).dispatcher
+        HttpClientRegistry.release(this.apiClient.getServerConfiguration())
+        val idle = System.currentTimeMillis() + 5000
+        while (dispatcher.runningCallsCount() > 0 && System.currentTimeMillis() < idle) {
+            Thread.sleep(50)
+        }
+        Assert.assertEquals(0, dispatcher.runningCallsCount())
+    }
 
     @Test
     fun buildTrendingObj() {
@@ -55,9 +260,8 @@ class ReportDownloaderTest {
         assert(trendingDataWrapper.trendingData.runId == 781)
     }
 
-    @Test
-    fun writeTxToCsvBytes() {
-        val tx = TestRunTransactionsResponse(
+    private fun transaction(): TestRunTransactionsResponse {
+        return TestRunTransactionsResponse(
             "Peacefull_FF",
             -1,
             "TC_peacefull_12.56_FF_20_pacing",
@@ -73,7 +277,37 @@ class ReportDownloaderTest {
             0,
             -0.013767751
         )
-        val csvBytes = ReportDownloader.writeCsvBytesArray(arrayOf(tx))
+    }
+
+    /**
+     * the recorded metadata of a report matches the file saved in [dir].
+     */
+    private fun assertReportFile(testRun: LoadTestRun, dir: File, fileName: String) {
+        val file = File(dir, fileName)
+        val recorded = testRun.reportFiles[fileName]!!
+        Assert.assertEquals(fileName, recorded.name)
+        Assert.assertEquals(file.length(), recorded.size)
+        val sha256 = MessageDigest.getInstance("SHA-256").digest(file.readBytes())
+        Assert.assertEquals(sha256.joinToString("") { "%02x".format(it) }, recorded.sha256)
+    }
+
+    @Test
+    fun writeTxToCsvBytes() {
+        val csvBytes = ReportDownloader.writeCsvBytesArray(arrayOf(this.transaction()))
         println(csvBytes.toString(Charsets.UTF_8))
     }
+
+    @Test
+    fun generatedReportFiles() {
+        val testRun = LoadTestRun(7, LoadTest(1, 1))
+        testRun.statusEnum = TestRunStatus.PASSED
+        testRun.transactions = arrayOf(this.transaction())
+
+        this.downloader().genTxCsv(testRun, folder.root)
+        this.downloader().genXmlFile(testRun, folder.root)
+
+        Assert.assertEquals(2, testRun.reportFiles.size)
+        this.assertReportFile(testRun, folder.root, "lrc_report_trans_FAKE_TENANT_ID-7.csv")
+        this.assertReportFile(testRun, folder.root, "lrc_report_FAKE_TENANT_ID-7.xml")
+    }
 }
@@ -0,0 +1,158 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.mockwebserver.SocketPolicy
+import okio.Buffer
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.Base64
+import kotlin.random.Random
+
+class ResumableDownloaderTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val server = MockWebServer()
+    private val client = OkHttpClient()
+    private val content = Random(42).nextBytes(256 * 1024)
+    private val sha256 = MessageDigest.getInstance("SHA-256").digest(content)
+    private val backoffs = ArrayList<Int>()
+
+    @Before
+    fun setUp() {
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /**
+     * serve the content, drop the connection mid-body for the first [disconnects] requests.
+     */
+    private fun serve(disconnects: Int, supportRange: Boolean = true, digest: ByteArray = sha256) {
+        server.dispatcher = object : Dispatcher() {
+            var count = 0
+
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                count += 1
+                val range = request.getHeader("Range")
+                val start = if (supportRange && range != null) {
+                    range.removePrefix("bytes=").removeSuffix("-").toInt()
+                } else {
+                    0
+                }
+
+                val res = MockResponse()
+                    .setHeader("Content-Type", "application/octet-stream")
+                    .setHeader("Digest", "sha-256=${Base64.getEncoder().encodeToString(digest)}")
+                    .setBody(Buffer().write(content, start, content.size - start))
+                if (start > 0) {
+                    res.setResponseCode(206)
+                    res.setHeader("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+                }
+                if (count <= disconnects) {
+                    res.socketPolicy = SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY
+                }
+
+                return res
+            }
+        }
+    }
+
+    private fun downloader(maxAttempts: Int = 5): ResumableDownloader {
+        val retryDelay: (Int) -> Long = { failed ->
+            backoffs.add(failed)
+            0L
+        }
+        return ResumableDownloader(LoggerProxy(), maxAttempts, retryDelay) { offset ->
+            val builder = Request.Builder().url(server.url("/report"))
+            if (offset > 0) {
+                builder.header("Range", "bytes=$offset-")
+            }
+            client.newCall(builder.build()).execute()
+        }
+    }
+
+    @Test
+    fun resumesAfterDisconnects() {
+        serve(2)
+        val file = File(folder.root, "report.pdf")
+        val result = downloader().download(file)
+
+        assert(result.attempts == 3)
+        assert(backoffs == listOf(1, 2))
+        assert(result.size == content.size.toLong())
+        assert(file.readBytes().contentEquals(content))
+        assert(!File(folder.root, "report.pdf.part").exists())
+
+        server.takeRequest()
+        val resumed = server.takeRequest()
+        assert(resumed.getHeader("Range")?.startsWith("bytes=") == true)
+        assert(resumed.getHeader("Range") != "bytes=0-")
+    }
+
+    @Test
+    fun restartsWhenRangeIsNotSupported() {
+        serve(1, supportRange = false)
+        val file = File(folder.root, "report.pdf")
+        val result = downloader().download(file)
+
+        assert(result.attempts == 2)
+        assert(file.readBytes().contentEquals(content))
+    }
+
+    @Test
+    fun givesUpAfterMaxAttempts() {
+        serve(3)
+        val file = File(folder.root, "report.pdf")
+        try {
+            downloader(3).download(file)
+            assert(false)
+        } catch (e: IOException) {
+            // no delay after the last attempt
+            assert(backoffs == listOf(1, 2))
+            assert(!file.exists())
+            assert(!File(folder.root, "report.pdf.part").exists())
+        }
+    }
+
+    @Test
+    fun rejectsChecksumMismatch() {
+        serve(0, digest = ByteArray(32))
+        val file = File(folder.root, "report.pdf")
+        try {
+            downloader().download(file)
+            assert(false)
+        } catch (e: IOException) {
+            assert(e.message?.contains("Checksum mismatch") == true)
+            assert(!file.exists())
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.google.gson.JsonObject
+import com.microfocus.lrc.MockServerResponseGenerator
+import com.microfocus.lrc.core.ApiClient
+import com.microfocus.lrc.core.ApiClientFactory
+import com.microfocus.lrc.core.entity.LoadTest
+import com.microfocus.lrc.core.entity.LoadTestRun
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import com.microfocus.lrc.core.entity.TestRunStatus
+import com.microfocus.lrc.jenkins.LoggerProxy
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class RunMonitorTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val server = MockWebServer()
+    private val statusPolls = AtomicInteger()
+
+    @Volatile
+    private var status = TestRunStatus.RUNNING
+
+    private lateinit var apiClient: ApiClient
+    private lateinit var monitor: RunMonitor
+
+    @Before
+    fun setUp() {
+        MockServerResponseGenerator.resetClientCaches()
+        this.server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val body = JsonObject()
+                when (request.requestUrl?.encodedPath) {
+                    "/v1/auth" -> body.addProperty("token", "fake_token")
+                    "/v1/projects" -> return MockResponse().setBody("[]")
+                    "/v1/test-runs/7/status" -> {
+                        statusPolls.incrementAndGet()
+                        body.addProperty("status", status.statusName)
+                        body.addProperty("uiStatus", status.statusName)
+                        body.addProperty("isTerminated", status.isEnded)
+                    }
+                    else -> return MockResponse().setResponseCode(404)
+                }
+
+                return MockResponse().setBody(body.toString())
+            }
+        }
+        this.server.start()
+
+        val config = ServerConfiguration(
+            this.server.url("/").toString(), "user", "secret", "FAKE_TENANT_ID", 1, false
+        )
+        this.apiClient = ApiClientFactory.getClient(config)
+        this.monitor = RunMonitor(1, 200)
+    }
+
+    @After
+    fun tearDown() {
+        this.monitor.shutdownNow()
+        this.apiClient.close()
+        this.server.close()
+        MockServerResponseGenerator.resetClientCaches()
+    }
+
+    private fun register(): CompletableFuture<LoadTestRun> {
+        return this.monitor.register(
+            LoadTestRun(7, LoadTest(1, 1)),
+            LoadTestRunService(this.apiClient, LoggerProxy()),
+            this.apiClient,
+            PollingStrategy.forOptions(true),
+            LoggerProxy()
+        )
+    }
+
+    private fun waitFor(condition: () -> Boolean) {
+        for (i in 0 until 100) {
+            if (condition()) {
+                return
+            }
+            Thread.sleep(100)
+        }
+        Assert.fail("timed out")
+    }
+
+    @Test
+    fun pollsUntilEndedThenReleasesThreads() {
+        val future = this.register()
+        this.waitFor { this.statusPolls.get() >= 2 }
+        Assert.assertFalse(future.isDone)
+        Assert.assertEquals(1, this.monitor.activeRuns())
+
+        this.status = TestRunStatus.PASSED
+        val ended = future.get(10, TimeUnit.SECONDS)
+        Assert.assertEquals(TestRunStatus.PASSED, ended.statusEnum)
+        Assert.assertEquals(0, this.monitor.activeRuns())
+
+        // nothing left to monitor, e.g. on an agent after the build step
+        this.waitFor { this.monitor.poolSize() == 0 }
+    }
+
+    @Test
+    fun cancelledRunIsNoLongerPolled() {
+        val future = this.register()
+        this.waitFor { this.statusPolls.get() >= 1 }
+
+        // the build step is interrupted
+        future.cancel(true)
+        Thread.sleep(300)
+        val polls = this.statusPolls.get()
+        Thread.sleep(500)
+
+        Assert.assertEquals(polls, this.statusPolls.get())
+        Assert.assertEquals(0, this.monitor.activeRuns())
+    }
+
+    @Test
+    fun shutdownFailsMonitoredRuns() {
+        val future = this.register()
+        this.monitor.shutdownNow()
+
+        try {
+            future.get(10, TimeUnit.SECONDS)
+            Assert.fail("expected the run to fail")
+        } catch (e: ExecutionException) {
+            Assert.assertTrue(e.cause is IOException)
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.entity.ServerConfiguration
+import com.microfocus.lrc.core.entity.TestRunOptions
+import org.junit.After
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+
+class RunSessionTest {
+    // Secret needs a running Jenkins
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+
+    @After
+    fun tearDown() {
+        RunSession.clear()
+    }
+
+    private fun config(password: String = "secret"): ServerConfiguration {
+        return ServerConfiguration("http://localhost", "user", password, "FAKE_TENANT_ID", 1, false)
+    }
+
+    private fun acquire(
+        buildId: String = "job#1",
+        config: ServerConfiguration = config(),
+        testId: Int = 1
+    ): RunSession {
+        return RunSession.acquire(buildId, config, TestRunOptions(testId, false), System.out)
+    }
+
+    @Test
+    fun sharedWithinBuildAndConfiguration() {
+        val session = this.acquire()
+        RunSession.unbind("job#1", 1, config())
+
+        Assert.assertSame(session, this.acquire())
+        Assert.assertNotSame(session, this.acquire("job#2"))
+        Assert.assertNotSame(session, this.acquire(config = config("other")))
+    }
+
+    @Test
+    fun parallelTestsOfBuildAreSeparated() {
+        val first = this.acquire()
+        val second = this.acquire(testId = 2)
+
+        Assert.assertNotSame(first, second)
+        Assert.assertEquals(1, first.testRunOptions.testId)
+        Assert.assertEquals(2, second.testRunOptions.testId)
+
+        // releasing one test's session leaves the other one registered
+        RunSession.release("job#1", 2, config())
+        Assert.assertSame(first, this.acquire())
+        Assert.assertNotSame(second, this.acquire(testId = 2))
+    }
+
+    @Test
+    fun releasedByLastUser() {
+        val session = this.acquire()
+        Assert.assertSame(session, this.acquire())
+
+        // still used by the first step
+        RunSession.release("job#1", 1, config())
+        RunSession.evictIdle()
+        Assert.assertSame(session, this.acquire())
+        RunSession.release("job#1", 1, config())
+
+        RunSession.unbind("job#1", 1, config())
+        Assert.assertNotSame(session, this.acquire())
+    }
+
+    @Test
+    fun evictOnlyIdle() {
+        val idle = this.acquire()
+        RunSession.unbind("job#1", 1, config())
+        val inUse = this.acquire("job#2")
+
+        RunSession.evictIdle(System.currentTimeMillis() + Constants.RUN_SESSION_IDLE_TIMEOUT + 1)
+
+        Assert.assertSame(inUse, this.acquire("job#2"))
+        Assert.assertNotSame(idle, this.acquire())
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.core.service
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class RunStateStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun saveLoadDelete() {
+        val file = File(folder.root, RunStateStore.fileName(999))
+        val store = RunStateStore(file)
+        assert(store.load() == null)
+
+        store.save(RunState(123, 999, 99, "FAKE_TENANT_ID"))
+        val state = store.load()
+        assert(state != null)
+        assert(state!!.runId == 123)
+        assert(state.testId == 999)
+        assert(state.tenantId == "FAKE_TENANT_ID")
+        assert(!File(folder.root, "${file.name}.tmp").exists())
+
+        store.delete()
+        assert(!file.exists())
+        assert(store.load() == null)
+    }
+
+    @Test
+    fun ignoreCorruptedState() {
+        val file = File(folder.root, RunStateStore.fileName(999))
+        file.writeText("{\"runId\":")
+
+        assert(RunStateStore(file).load() == null)
+    }
+}
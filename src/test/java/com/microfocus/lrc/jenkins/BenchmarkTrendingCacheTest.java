@@ -0,0 +1,62 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.microfocus.lrc.core.entity.TrendingDataWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkTrendingCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TrendingDataWrapper trending(final int runId, final String status) {
+        JsonObject json = new JsonObject();
+        json.addProperty("runId", runId);
+        json.addProperty("status", status);
+        json.addProperty("testId", 113);
+        json.addProperty("testName", "TEST for TFS");
+        json.addProperty("percentile", 90);
+        JsonObject wrapper = new JsonObject();
+        wrapper.add("trendingData", json);
+        wrapper.addProperty("tenantId", "FAKE_TENANT_ID");
+
+        return new Gson().fromJson(wrapper, TrendingDataWrapper.class);
+    }
+
+    @Test
+    public void saveAndLoad() {
+        BenchmarkTrendingCache cache = new BenchmarkTrendingCache(folder.getRoot());
+        assertNull(cache.load("FAKE_TENANT_ID", 781));
+
+        assertTrue(cache.save(trending(781, "PASSED")));
+        TrendingDataWrapper loaded = cache.load("FAKE_TENANT_ID", 781);
+        assertNotNull(loaded);
+        assertEquals(781, loaded.getTrendingData().getRunId());
+        assertEquals(90, loaded.getTrendingData().getPercentile());
+        assertNull(cache.load("OTHER_TENANT", 781));
+    }
+
+    @Test
+    public void skipRunsNotEnded() {
+        BenchmarkTrendingCache cache = new BenchmarkTrendingCache(folder.getRoot());
+        assertFalse(cache.save(trending(782, "RUNNING")));
+        assertFalse(cache.fileOf("FAKE_TENANT_ID", 782).exists());
+    }
+}
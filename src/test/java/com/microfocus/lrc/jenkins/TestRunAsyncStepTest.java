@@ -0,0 +1,202 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.google.gson.JsonObject;
+import com.microfocus.lrc.MockServerResponseGenerator;
+import com.microfocus.lrc.core.entity.BooleanOptionInEnvVars;
+import com.microfocus.lrc.core.entity.TestRunStatus;
+import hudson.EnvVars;
+import hudson.model.Result;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRunAsyncStepTest {
+
+    private static final FakeServer SERVER = new FakeServer();
+    private static final MockWebServer MOCKSERVER = new MockWebServer();
+
+    @Rule
+    public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+    /**
+     * answers by path, the step calls the server from several threads in no fixed order.
+     */
+    private static final class FakeServer extends Dispatcher {
+        private volatile TestRunStatus status = TestRunStatus.RUNNING;
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        private final AtomicInteger started = new AtomicInteger();
+
+        @Override
+        public MockResponse dispatch(final RecordedRequest request) {
+            String path = request.getRequestUrl() != null ? request.getRequestUrl().encodedPath() : "";
+            String method = request.getMethod();
+            JsonObject body = new JsonObject();
+            if (path.startsWith("/v1/auth")) {
+                body.addProperty("token", "fake_token");
+            } else if (path.equals("/v1/projects")) {
+                return new MockResponse().setBody("[]");
+            } else if (path.equals("/v1/projects/99/load-tests/999")) {
+                body.addProperty("name", "fake_load_test");
+            } else if (path.equals("/v1/projects/99/load-tests/999/runs")) {
+                this.started.incrementAndGet();
+                body.addProperty("runId", 42);
+            } else if (path.equals("/v1/test-runs/42") && "PUT".equals(method)) {
+                this.aborted.set(true);
+                this.status = TestRunStatus.ABORTED;
+            } else if (path.equals("/v1/test-runs/42") || path.equals("/v1/test-runs/42/status")) {
+                TestRunStatus s = this.status;
+                body.addProperty("testId", 999);
+                body.addProperty("status", s.getStatusName());
+                body.addProperty("uiStatus", s.getStatusName());
+                body.addProperty("isTerminated", s.isEnded());
+                body.addProperty("hasReport", false);
+            } else {
+                return new MockResponse().setResponseCode(404);
+            }
+
+            return new MockResponse().setBody(body.toString());
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        MOCKSERVER.setDispatcher(SERVER);
+        MOCKSERVER.start();
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        MOCKSERVER.close();
+    }
+
+    @Before
+    public void resetServer() {
+        SERVER.status = TestRunStatus.RUNNING;
+        SERVER.aborted.set(false);
+        SERVER.started.set(0);
+    }
+
+    private static WorkflowJob createJob(final JenkinsRule r, final String script) throws IOException {
+        EnvVars.masterEnvVars.put(BooleanOptionInEnvVars.LRC_DEBUG_LOG.name(), "false");
+        EnvVars.masterEnvVars.put(BooleanOptionInEnvVars.LRC_TEST_MODE.name(), "true");
+
+        TestRunBuilder.DescriptorImpl descriptor = r.jenkins.getDescriptorByType(TestRunBuilder.DescriptorImpl.class);
+        descriptor.setUrl(MOCKSERVER.url("/").toString());
+        descriptor.setClientId("FAKE_CLIENT_ID");
+        descriptor.setClientSecret("FAKE_CLIENT_SECRET");
+        descriptor.setTenantId("FAKE_TENANT_ID");
+        descriptor.setUseOAuth(true);
+        descriptor.save();
+        MockServerResponseGenerator.resetClientCaches();
+
+        WorkflowJob p = r.createProject(WorkflowJob.class, "p");
+        p.setDefinition(new CpsFlowDefinition(script, true));
+
+        return p;
+    }
+
+    private static WorkflowRun startAndWaitForRun(final JenkinsRule r, final String script) throws Exception {
+        WorkflowRun b = createJob(r, script).scheduleBuild2(0).waitForStart();
+        r.waitForMessage("Test run #42 started.", b);
+        // polled by the run monitor, the run ID is saved with the step
+        r.waitForMessage("RUNNING - ", b);
+
+        return b;
+    }
+
+    @Test
+    public void completesWhenRunEnds() {
+        story.then(r -> {
+            WorkflowRun b = startAndWaitForRun(r, "node { lrcRunTestAsync projectId: '99', testId: '999' }");
+            Assert.assertTrue(b.isBuilding());
+
+            SERVER.status = TestRunStatus.PASSED;
+            r.assertBuildStatusSuccess(r.waitForCompletion(b));
+            r.assertLogContains("ended with PASSED status", b);
+            r.assertLogNotContains("outside of a node block", b);
+
+            // nothing left running on the step pool
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) TestRunAsyncStep.executor();
+            for (int i = 0; i < 50 && pool.getActiveCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(0, pool.getActiveCount());
+            Assert.assertEquals(0, pool.getQueue().size());
+        });
+    }
+
+    @Test
+    public void warnsOutsideOfNode() {
+        story.then(r -> {
+            WorkflowRun b = startAndWaitForRun(r, "lrcRunTestAsync projectId: '99', testId: '999'");
+            r.assertLogContains("lrcRunTestAsync is used outside of a node block", b);
+
+            SERVER.status = TestRunStatus.PASSED;
+            r.assertBuildStatusSuccess(r.waitForCompletion(b));
+            r.assertLogContains("No workspace available, report files are not saved.", b);
+        });
+    }
+
+    @Test
+    public void stopAbortsRun() {
+        story.then(r -> {
+            WorkflowRun b = startAndWaitForRun(r, "node { lrcRunTestAsync projectId: '99', testId: '999' }");
+
+            b.doStop();
+            r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(b));
+            for (int i = 0; i < 100 && !SERVER.aborted.get(); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(SERVER.aborted.get());
+        });
+    }
+
+    @Test
+    public void resumesMonitoringAfterRestart() {
+        story.then(r -> {
+            WorkflowRun b = startAndWaitForRun(r, "node { lrcRunTestAsync projectId: '99', testId: '999' }");
+            Assert.assertTrue(b.isBuilding());
+        });
+        story.then(r -> {
+            WorkflowJob p = r.jenkins.getItemByFullName("p", WorkflowJob.class);
+            Assert.assertNotNull(p);
+            WorkflowRun b = p.getBuildByNumber(1);
+            Assert.assertTrue(b.isBuilding());
+
+            SERVER.status = TestRunStatus.PASSED;
+            r.assertBuildStatusSuccess(r.waitForCompletion(b));
+            r.assertLogContains("Resumed monitoring test run #42.", b);
+            Assert.assertEquals(1, SERVER.started.get());
+            Assert.assertFalse(SERVER.aborted.get());
+        });
+    }
+}
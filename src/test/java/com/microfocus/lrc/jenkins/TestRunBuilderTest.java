@@ -19,7 +19,13 @@ import com.google.gson.JsonObject;
 import com.microfocus.lrc.MockServerResponseGenerator;
 import com.microfocus.lrc.core.Constants;
 import com.microfocus.lrc.core.entity.BooleanOptionInEnvVars;
+import com.microfocus.lrc.core.entity.LoadTest;
+import com.microfocus.lrc.core.entity.LoadTestRun;
+import com.microfocus.lrc.core.entity.ReportFile;
+import com.microfocus.lrc.core.entity.ServerConfiguration;
+import com.microfocus.lrc.core.entity.TestRunOptions;
 import com.microfocus.lrc.core.entity.TestRunStatus;
+import com.microfocus.lrc.core.service.RunStateStore;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
@@ -32,6 +38,7 @@ import org.jvnet.hudson.test.TestBuilder;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.concurrent.Future;
 
 public class TestRunBuilderTest {
@@ -121,28 +128,7 @@ public class TestRunBuilderTest {
         mockserver.enqueue(responseRunStatusHasReport);
 
         MockServerResponseGenerator.mockTransactions();
-        // repeat 2 times for csv and pdf
-        for (int i = 0; i < 2; i += 1) {
-            JsonObject genReportResObj = new JsonObject();
-            genReportResObj.addProperty("reportId", -999);
-            MockResponse responseGenReport = new MockResponse().setBody(genReportResObj.toString());
-            mockserver.enqueue(responseGenReport);
-
-            JsonObject reportStatusResObj = new JsonObject();
-            reportStatusResObj.addProperty("message", "In progress");
-            MockResponse responseReportStatus = new MockResponse().setBody(reportStatusResObj.toString());
-            responseReportStatus.setHeader("Content-Type", Constants.APPLICATION_JSON);
-            mockserver.enqueue(responseReportStatus);
-
-            String fakeReportContent = "FAKE_REPORT_CONTENT";
-            MockResponse responseReportContent = new MockResponse().setBody(fakeReportContent);
-            responseReportContent.setHeader("Content-Type", "application/octet-stream");
-            mockserver.enqueue(responseReportContent);
-        }
-
-        // for report downloading in TestRunPublisher.perform
-        MockServerResponseGenerator.mockLogin();
-        MockServerResponseGenerator.mockReports();
+        this.mockReportGeneration();
     }
 
     private void mockResponseWithError() {
@@ -185,28 +171,7 @@ public class TestRunBuilderTest {
         mockserver.enqueue(responseRunStatusHasReport);
 
         MockServerResponseGenerator.mockTransactions();
-        // repeat 2 times for csv and pdf
-        for (int i = 0; i < 2; i += 1) {
-            JsonObject genReportResObj = new JsonObject();
-            genReportResObj.addProperty("reportId", -999);
-            MockResponse responseGenReport = new MockResponse().setBody(genReportResObj.toString());
-            mockserver.enqueue(responseGenReport);
-
-            JsonObject reportStatusResObj = new JsonObject();
-            reportStatusResObj.addProperty("message", "In progress");
-            MockResponse responseReportStatus = new MockResponse().setBody(reportStatusResObj.toString());
-            responseReportStatus.setHeader("Content-Type", Constants.APPLICATION_JSON);
-            mockserver.enqueue(responseReportStatus);
-
-            String fakeReportContent = "FAKE_REPORT_CONTENT";
-            MockResponse responseReportContent = new MockResponse().setBody(fakeReportContent);
-            responseReportContent.setHeader("Content-Type", "application/octet-stream");
-            mockserver.enqueue(responseReportContent);
-        }
-
-        // for report downloading in TestRunPublisher.perform
-        MockServerResponseGenerator.mockLogin();
-        MockServerResponseGenerator.mockReports();
+        this.mockReportGeneration();
     }
 
     private void mockResponseWithLoginExpired() {
@@ -251,28 +216,7 @@ public class TestRunBuilderTest {
         mockserver.enqueue(responseRunStatusHasReport);
 
         MockServerResponseGenerator.mockTransactions();
-        // repeat 2 times for csv and pdf
-        for (int i = 0; i < 2; i += 1) {
-            JsonObject genReportResObj = new JsonObject();
-            genReportResObj.addProperty("reportId", -999);
-            MockResponse responseGenReport = new MockResponse().setBody(genReportResObj.toString());
-            mockserver.enqueue(responseGenReport);
-
-            JsonObject reportStatusResObj = new JsonObject();
-            reportStatusResObj.addProperty("message", "In progress");
-            MockResponse responseReportStatus = new MockResponse().setBody(reportStatusResObj.toString());
-            responseReportStatus.setHeader("Content-Type", Constants.APPLICATION_JSON);
-            mockserver.enqueue(responseReportStatus);
-
-            String fakeReportContent = "FAKE_REPORT_CONTENT";
-            MockResponse responseReportContent = new MockResponse().setBody(fakeReportContent);
-            responseReportContent.setHeader("Content-Type", "application/octet-stream");
-            mockserver.enqueue(responseReportContent);
-        }
-
-        // for report downloading in TestRunPublisher.perform
-        MockServerResponseGenerator.mockLogin();
-        MockServerResponseGenerator.mockReports();
+        this.mockReportGeneration();
     }
 
     private void mockResponseWithFailedRun() {
@@ -315,28 +259,32 @@ public class TestRunBuilderTest {
         MockServerResponseGenerator.mockTestTransactions();
         MockServerResponseGenerator.mockTrtSummary();
 
-        // repeat 2 times for csv and pdf
+        this.mockReportGeneration();
+    }
+
+    private void mockReportGeneration() {
+        // csv and pdf are requested up front, then polled together
         for (int i = 0; i < 2; i += 1) {
             JsonObject genReportResObj = new JsonObject();
             genReportResObj.addProperty("reportId", -999);
             MockResponse responseGenReport = new MockResponse().setBody(genReportResObj.toString());
             mockserver.enqueue(responseGenReport);
+        }
 
+        for (int i = 0; i < 2; i += 1) {
             JsonObject reportStatusResObj = new JsonObject();
             reportStatusResObj.addProperty("message", "In progress");
             MockResponse responseReportStatus = new MockResponse().setBody(reportStatusResObj.toString());
             responseReportStatus.setHeader("Content-Type", Constants.APPLICATION_JSON);
             mockserver.enqueue(responseReportStatus);
+        }
 
+        for (int i = 0; i < 2; i += 1) {
             String fakeReportContent = "FAKE_REPORT_CONTENT";
             MockResponse responseReportContent = new MockResponse().setBody(fakeReportContent);
             responseReportContent.setHeader("Content-Type", "application/octet-stream");
             mockserver.enqueue(responseReportContent);
         }
-
-        // for report downloading in TestRunPublisher.perform
-        MockServerResponseGenerator.mockLogin();
-        MockServerResponseGenerator.mockReports();
     }
 
     @Test
@@ -367,6 +315,7 @@ public class TestRunBuilderTest {
             descriptor.setUseOAuth(true);
 
             descriptor.save();
+            MockServerResponseGenerator.resetClientCaches();
 
             switch (i) {
                 case 0:
@@ -414,4 +363,101 @@ public class TestRunBuilderTest {
             Assert.assertTrue(workspace.child("lrc_report_trans_FAKE_TENANT_ID--1.csv").exists());
         }
     }
+
+    @Test
+    public void testBuildResumesUnfinishedRun() throws Exception {
+        EnvVars.masterEnvVars.put(BooleanOptionInEnvVars.LRC_DEBUG_LOG.name(), "false");
+        EnvVars.masterEnvVars.put(BooleanOptionInEnvVars.LRC_TEST_MODE.name(), "true");
+
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getBuildersList().add(new TestRunBuilder("99", "999", false));
+        TestRunBuilder.DescriptorImpl descriptor = jenkins.get(TestRunBuilder.DescriptorImpl.class);
+        descriptor.setUrl(mockserver.url("/").toString());
+        descriptor.setClientId("FAKE_CLIENT_ID");
+        descriptor.setClientSecret("FAKE_CLIENT_SECRET");
+        descriptor.setTenantId("FAKE_TENANT_ID");
+        descriptor.setUseOAuth(true);
+        descriptor.save();
+        MockServerResponseGenerator.resetClientCaches();
+
+        // left by a build interrupted by a restart
+        FilePath workspace = jenkins.jenkins.getWorkspaceFor(project);
+        assert workspace != null;
+        FilePath state = workspace.child(RunStateStore.fileName(999));
+        state.write(
+                "{\"runId\":42,\"testId\":999,\"projectId\":99,\"tenantId\":\"FAKE_TENANT_ID\",\"startedAt\":"
+                        + System.currentTimeMillis() + "}",
+                "UTF-8"
+        );
+
+        MockServerResponseGenerator.mockLogin();
+        JsonObject runStatusResObj = new JsonObject();
+        runStatusResObj.addProperty("testId", 999);
+        runStatusResObj.addProperty("status", TestRunStatus.RUNNING.getStatusName());
+        runStatusResObj.addProperty("uiStatus", TestRunStatus.RUNNING.getStatusName());
+        runStatusResObj.addProperty("isTerminated", false);
+        for (int i = 0; i < 3; i++) {
+            mockserver.enqueue(new MockResponse().setBody(runStatusResObj.toString()));
+        }
+
+        runStatusResObj.addProperty("status", TestRunStatus.PASSED.getStatusName());
+        runStatusResObj.addProperty("uiStatus", TestRunStatus.PASSED.getStatusName());
+        runStatusResObj.addProperty("isTerminated", true);
+        mockserver.enqueue(new MockResponse().setBody(runStatusResObj.toString()));
+        runStatusResObj.addProperty("hasReport", true);
+        mockserver.enqueue(new MockResponse().setBody(runStatusResObj.toString()));
+
+        MockServerResponseGenerator.mockTransactions();
+        this.mockReportGeneration();
+
+        FreeStyleBuild b = jenkins.buildAndAssertSuccess(project);
+        jenkins.assertLogContains("Found unfinished test run #42", b);
+        jenkins.assertLogNotContains("Starting load test", b);
+        Assert.assertTrue(workspace.child("lrc_report_FAKE_TENANT_ID-42.xml").exists());
+        Assert.assertFalse(state.exists());
+    }
+
+    private FilePath publish(final FilePath workspace) throws Exception {
+        FreeStyleBuild b = jenkins.buildAndAssertSuccess(jenkins.createFreeStyleProject());
+        FilePath reportDir = new FilePath(Files.createTempDirectory("lrc-reports").toFile());
+        reportDir.child("lrc_report_FAKE_TENANT_ID-7.csv").write("csv content", "UTF-8");
+
+        LoadTestRun testRun = new LoadTestRun(7, new LoadTest(1, 1));
+        testRun.setStatusEnum(TestRunStatus.PASSED);
+        testRun.getReportFiles().put(
+                "lrc_report_FAKE_TENANT_ID-7.csv",
+                new ReportFile("lrc_report_FAKE_TENANT_ID-7.csv", 11, "fake_sha256")
+        );
+        // recorded, but not downloaded
+        testRun.getReportFiles().put(
+                "lrc_report_FAKE_TENANT_ID-7.pdf",
+                new ReportFile("lrc_report_FAKE_TENANT_ID-7.pdf", 42, "fake_sha256")
+        );
+
+        TestRunBuilder.RunSetup setup = new TestRunBuilder.RunSetup(
+                new ServerConfiguration("FAKE_URL", "user", "secret", "FAKE_TENANT_ID", 1, false),
+                new TestRunOptions(1, false)
+        );
+        new TestRunBuilder("1", "1", false).publishResult(b, workspace, setup, testRun, reportDir);
+        Assert.assertEquals(Result.SUCCESS, b.getResult());
+
+        return reportDir;
+    }
+
+    @Test
+    public void testPublishResultMovesReportsIntoWorkspace() throws Exception {
+        FilePath workspace = jenkins.jenkins.getRootPath().child("publish-workspace");
+        workspace.mkdirs();
+
+        FilePath reportDir = this.publish(workspace);
+        Assert.assertEquals("csv content", workspace.child("lrc_report_FAKE_TENANT_ID-7.csv").readToString());
+        Assert.assertFalse(workspace.child("lrc_report_FAKE_TENANT_ID-7.pdf").exists());
+        Assert.assertFalse(reportDir.exists());
+    }
+
+    @Test
+    public void testPublishResultWithoutWorkspaceDeletesReports() throws Exception {
+        FilePath reportDir = this.publish(null);
+        Assert.assertFalse(reportDir.exists());
+    }
 }
@@ -123,6 +123,7 @@ class TestRunPublisherTest {
 
         })
 
+        MockServerResponseGenerator.resetClientCaches()
         MockServerResponseGenerator.mockLogin()
         MockServerResponseGenerator.mockTestRunResults()
         MockServerResponseGenerator.mockTransactions()
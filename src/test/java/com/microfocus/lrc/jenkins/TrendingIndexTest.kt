@@ -0,0 +1,122 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.google.gson.Gson
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.microfocus.lrc.core.entity.TrendingConfiguration
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import hudson.model.FreeStyleBuild
+import hudson.model.FreeStyleProject
+import org.junit.After
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+
+class TrendingIndexTest {
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val config = TrendingConfiguration(5, 0, 5, 10, 20, 5, 10, 20, true)
+
+    @After
+    fun cleanup() {
+        TrendingIndex.clear()
+    }
+
+    private fun trending(runId: Int, testId: Int, tenantId: String = "FAKE_TENANT_ID"): TrendingDataWrapper {
+        val tx = JsonObject()
+        tx.addProperty("name", "login")
+        tx.addProperty("script", "script_1")
+        tx.addProperty("avg", 1.5)
+        tx.addProperty("nintieth", 2.5)
+        tx.addProperty("testScriptID", 1)
+        val transactions = JsonArray()
+        transactions.add(tx)
+
+        val json = JsonObject()
+        json.addProperty("runId", runId)
+        json.addProperty("status", "PASSED")
+        json.addProperty("testId", testId)
+        json.addProperty("percentile", 90)
+        json.add("transactions", transactions)
+        val wrapper = JsonObject()
+        wrapper.add("trendingData", json)
+        wrapper.addProperty("tenantId", tenantId)
+
+        return Gson().fromJson(wrapper, TrendingDataWrapper::class.java)
+    }
+
+    private fun build(
+        project: FreeStyleProject,
+        runId: Int,
+        testId: Int,
+        tenantId: String = "FAKE_TENANT_ID"
+    ): FreeStyleBuild {
+        val build = jenkins.buildAndAssertSuccess(project)
+        val wrapper = trending(runId, testId, tenantId)
+        build.replaceAction(TestRunReportBuildAction(build, wrapper, config))
+        TrendingIndex.append(build, wrapper)
+
+        return build
+    }
+
+    @Test
+    fun latestSeriesOfSameTest() {
+        val project = jenkins.createFreeStyleProject()
+        build(project, 101, 7)
+        build(project, 102, 8)
+        build(project, 103, 7)
+
+        val entries = TrendingIndex.of(project).latestSeries(project, 5)
+        Assert.assertEquals(listOf(3, 1), entries.map { it.buildNo })
+
+        // appended after the history walk
+        build(project, 104, 7)
+        Assert.assertEquals(listOf(4, 3), TrendingIndex.of(project).latestSeries(project, 2).map { it.buildNo })
+    }
+
+    @Test
+    fun seriesOfSameTenant() {
+        val project = jenkins.createFreeStyleProject()
+        build(project, 101, 7)
+        // the same test id on another tenant is another test
+        build(project, 201, 7, "OTHER_TENANT_ID")
+        build(project, 102, 7)
+        Assert.assertEquals(listOf(3, 1), TrendingIndex.of(project).latestSeries(project, 5).map { it.buildNo })
+
+        build(project, 202, 7, "OTHER_TENANT_ID")
+        Assert.assertEquals(listOf(4, 2), TrendingIndex.of(project).latestSeries(project, 5).map { it.buildNo })
+    }
+
+    @Test
+    fun buildDeletionInvalidates() {
+        val project = jenkins.createFreeStyleProject()
+        build(project, 101, 7)
+        val second = build(project, 102, 7)
+        Assert.assertEquals(2, TrendingIndex.of(project).latestSeries(project, 5).size)
+
+        second.delete()
+        Assert.assertEquals(listOf(1), TrendingIndex.of(project).latestSeries(project, 5).map { it.buildNo })
+    }
+
+    @Test
+    fun otherBuildDeletionCreatesNoStore() {
+        val project = jenkins.createFreeStyleProject()
+        jenkins.buildAndAssertSuccess(project).delete()
+
+        Assert.assertFalse(TrendingStore.exists(project))
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.google.gson.Gson
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.microfocus.lrc.core.entity.TrendingConfiguration
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import hudson.model.FreeStyleBuild
+import hudson.model.FreeStyleProject
+import org.junit.After
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.jvnet.hudson.test.JenkinsRule
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+class TrendingMigrationTest {
+    @get:Rule
+    var jenkins = JenkinsRule()
+
+    private val config = TrendingConfiguration(5, 0, 5, 10, 20, 5, 10, 20, true)
+
+    @After
+    fun cleanup() {
+        TrendingIndex.clear()
+        TrendingStore.clear()
+    }
+
+    private fun trending(runId: Int): TrendingDataWrapper {
+        val tx = JsonObject()
+        tx.addProperty("name", "login")
+        tx.addProperty("script", "script_1")
+        tx.addProperty("avg", 1.5)
+        tx.addProperty("nintieth", 2.5)
+        tx.addProperty("testScriptID", 1)
+        val transactions = JsonArray()
+        transactions.add(tx)
+
+        val json = JsonObject()
+        json.addProperty("runId", runId)
+        json.addProperty("status", "PASSED")
+        json.addProperty("testId", 7)
+        json.addProperty("percentile", 90)
+        json.add("transactions", transactions)
+        val wrapper = JsonObject()
+        wrapper.add("trendingData", json)
+        wrapper.addProperty("tenantId", "FAKE_TENANT_ID")
+
+        return Gson().fromJson(wrapper, TrendingDataWrapper::class.java)
+    }
+
+    /**
+     * a build saved by an earlier version, its trending data persisted in build.xml.
+     */
+    private fun legacyBuild(project: FreeStyleProject, runId: Int): FreeStyleBuild {
+        val build = jenkins.buildAndAssertSuccess(project)
+        build.replaceAction(TestRunReportBuildAction(build, trending(runId), config))
+        build.save()
+
+        return build
+    }
+
+    private fun buildXml(build: FreeStyleBuild): String {
+        return File(build.rootDir, "build.xml").readText()
+    }
+
+    @Test
+    fun migratesLegacyBuilds() {
+        val project = jenkins.createFreeStyleProject()
+        val first = legacyBuild(project, 101)
+        jenkins.buildAndAssertSuccess(project)
+        val third = legacyBuild(project, 103)
+        Assert.assertTrue(buildXml(first).contains("<trendingDataWrapper>"))
+
+        TrendingStore.migrateInBackground(project)!!.get(10, TimeUnit.SECONDS)
+
+        val store = TrendingStore.of(project)
+        Assert.assertTrue(store.isMigrated())
+        Assert.assertEquals(listOf(3, 1), store.records().map { it.buildNo })
+        Assert.assertNull(TrendingStore.migrateInBackground(project))
+
+        // re-saved without the trending data
+        Assert.assertFalse(buildXml(first).contains("<trendingDataWrapper>"))
+        Assert.assertFalse(buildXml(third).contains("<trendingDataWrapper>"))
+
+        // read from the store once reloaded
+        TrendingStore.clear()
+        first.reload()
+        val action = first.getAction(TestRunReportBuildAction::class.java)!!
+        Assert.assertEquals(101, action.trendingDataWrapper.trendingData.runId)
+        Assert.assertEquals(listOf(3, 1), TrendingIndex.of(project).latestSeries(project, 5).map { it.buildNo })
+    }
+
+    @Test
+    fun migratesLegacyReports() {
+        val project = jenkins.createFreeStyleProject()
+        val build = legacyBuild(project, 101)
+        // the rendered report, persisted with the build by earlier versions
+        val file = File(build.rootDir, "build.xml")
+        file.writeText(
+            buildXml(build).replace(
+                "</com.microfocus.lrc.jenkins.TestRunReportBuildAction>",
+                "<trendingReportHTML>&lt;html&gt;legacy&lt;/html&gt;</trendingReportHTML>" +
+                        "</com.microfocus.lrc.jenkins.TestRunReportBuildAction>"
+            )
+        )
+        build.reload()
+
+        // served as it is until migrated, loading the build has no side effect
+        val legacy = build.getAction(TestRunReportBuildAction::class.java)!!
+        Assert.assertEquals("<html>legacy</html>", legacy.getTrendingReportHTML(config))
+        Assert.assertNull(legacy.getTrendingReportHTML(TrendingConfiguration(10, 0, 5, 10, 20, 5, 10, 20, true)))
+        Assert.assertTrue(buildXml(build).contains("<trendingReportHTML>"))
+
+        TrendingStore.migrateInBackground(project)!!.get(10, TimeUnit.SECONDS)
+
+        val key = TrendingReportCache.keyOf(1, config)
+        Assert.assertFalse(buildXml(build).contains("<trendingReportHTML>"))
+        Assert.assertTrue(buildXml(build).contains("<trendingReportKey>$key</trendingReportKey>"))
+        Assert.assertEquals("<html>legacy</html>", TrendingReportCache(project).load(key))
+
+        build.reload()
+        val migrated = build.getAction(TestRunReportBuildAction::class.java)!!
+        Assert.assertEquals(key, migrated.trendingReportKey)
+        Assert.assertEquals("<html>legacy</html>", migrated.getTrendingReportHTML(config))
+    }
+
+    @Test
+    fun failedAppendClearsMigration() {
+        val project = jenkins.createFreeStyleProject()
+        legacyBuild(project, 101)
+        TrendingStore.migrateInBackground(project)!!.get(10, TimeUnit.SECONDS)
+        Assert.assertTrue(TrendingStore.of(project).isMigrated())
+
+        // the payload cannot be written
+        val data = File(project.rootDir, TrendingStore.DATA_FILE)
+        val aside = File(project.rootDir, "${TrendingStore.DATA_FILE}.aside")
+        Assert.assertTrue(data.renameTo(aside) && data.mkdir())
+        try {
+            val build = jenkins.buildAndAssertSuccess(project)
+            val action = TestRunReportBuildAction(build, trending(102), config)
+            build.replaceAction(action)
+            try {
+                action.moveToStore()
+                Assert.fail("expected an IOException")
+            } catch (e: IOException) {
+                // kept in the build
+                Assert.assertEquals(102, action.trendingDataWrapper.trendingData.runId)
+            }
+        } finally {
+            Assert.assertTrue(data.delete() && aside.renameTo(data))
+        }
+
+        Assert.assertFalse(TrendingStore.of(project).isMigrated())
+        Assert.assertEquals(listOf(2, 1), TrendingIndex.of(project).latestSeries(project, 5).map { it.buildNo })
+    }
+}
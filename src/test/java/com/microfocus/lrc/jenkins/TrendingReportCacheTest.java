@@ -0,0 +1,72 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins;
+
+import com.microfocus.lrc.core.entity.TrendingConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TrendingReportCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TrendingConfiguration config(final int runsCount) {
+        return new TrendingConfiguration(runsCount, 0, 5, 5, 10, 5, 5, 10, true);
+    }
+
+    private static String incompressible(final long seed) {
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        new Random(seed).nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Test
+    public void keyOfBuildAndConfig() {
+        assertEquals(TrendingReportCache.keyOf(7, config(5)), TrendingReportCache.keyOf(7, config(5)));
+        assertNotEquals(TrendingReportCache.keyOf(7, config(5)), TrendingReportCache.keyOf(8, config(5)));
+        assertNotEquals(TrendingReportCache.keyOf(7, config(5)), TrendingReportCache.keyOf(7, config(6)));
+        assertTrue(TrendingReportCache.keyOf(7, config(5)).startsWith("7-"));
+    }
+
+    @Test
+    public void saveAndLoad() {
+        TrendingReportCache cache = new TrendingReportCache(folder.getRoot());
+        String key = TrendingReportCache.keyOf(7, config(5));
+        assertNull(cache.load(key));
+
+        assertTrue(cache.save(key, "<html>report</html>"));
+        assertEquals("<html>report</html>", cache.load(key));
+        assertTrue(cache.fileOf(key).length() > 0);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        TrendingReportCache cache = new TrendingReportCache(folder.getRoot());
+        String older = TrendingReportCache.keyOf(7, config(5));
+        String newer = TrendingReportCache.keyOf(8, config(5));
+
+        assertTrue(cache.save(older, incompressible(1)));
+        assertTrue(cache.fileOf(older).setLastModified(System.currentTimeMillis() - 60000));
+        assertTrue(cache.save(newer, incompressible(2)));
+
+        assertFalse(cache.fileOf(older).exists());
+        assertEquals(incompressible(2), cache.load(newer));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.google.gson.Gson
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.microfocus.lrc.core.Constants
+import com.microfocus.lrc.core.entity.TrendingConfiguration
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import org.junit.Assert
+import org.junit.Test
+
+class TrendingReportTest {
+    // percentile thresholds 5/10/20, average thresholds 6/12/24
+    private val config = TrendingConfiguration(5, 0, 5, 10, 20, 6, 12, 24, false)
+
+    private fun trending(runId: Int, avg: Double, nintieth: Double, name: String = "login"): JsonObject {
+        val tx = JsonObject()
+        tx.addProperty("name", name)
+        tx.addProperty("script", "script_1")
+        tx.addProperty("avg", avg)
+        tx.addProperty("nintieth", nintieth)
+        tx.addProperty("testScriptID", 1)
+        val transactions = JsonArray()
+        transactions.add(tx)
+
+        val json = JsonObject()
+        json.addProperty("runId", runId)
+        json.addProperty("status", "PASSED")
+        json.addProperty("testId", 7)
+        json.addProperty("testName", "fake_load_test")
+        json.addProperty("percentile", 90)
+        json.add("transactions", transactions)
+
+        return json
+    }
+
+    private fun wrapper(trendingData: JsonObject, benchmark: JsonObject? = null): TrendingDataWrapper {
+        val wrapper = JsonObject()
+        wrapper.add("trendingData", trendingData)
+        wrapper.addProperty("tenantId", "FAKE_TENANT_ID")
+        if (benchmark != null) {
+            wrapper.add("benchmark", benchmark)
+            wrapper.addProperty("benchmarkId", benchmark["runId"].asInt)
+        }
+
+        return Gson().fromJson(wrapper, TrendingDataWrapper::class.java)
+    }
+
+    /**
+     * builds #1 to #3 (runs 101 to 103), the latest one compared with [benchmark].
+     */
+    private fun reportData(benchmark: JsonObject): JsonObject {
+        val latest = this.wrapper(this.trending(103, 1.5, 2.0), benchmark)
+        val entries = listOf(
+            TrendingIndex.Entry(3, 3000, latest),
+            TrendingIndex.Entry(2, 2000, this.wrapper(this.trending(102, 1.15, 1.8))),
+            TrendingIndex.Entry(1, 1000, this.wrapper(this.trending(101, 1.0, 2.0))),
+        )
+
+        return TrendingReport.reportData(entries, latest, this.config)
+    }
+
+    private fun groups(data: JsonObject): List<JsonObject> {
+        return data["data"].asJsonObject["trt"].asJsonArray.map { it.asJsonObject }
+    }
+
+    /**
+     * the rows of transaction [name], by run id.
+     */
+    private fun rows(data: JsonObject, name: String = "login"): Map<Int, JsonObject> {
+        val group = this.groups(data).single { it["transactionName"].asString == name }
+        Assert.assertEquals("script_1", group["scriptName"].asString)
+
+        return group["trtDataArr"].asJsonArray.map { it.asJsonObject }.associateBy { it["runId"].asInt }
+    }
+
+    @Test
+    fun buildsAndThresholds() {
+        val data = this.reportData(this.trending(101, 1.0, 2.0))
+
+        val metrics = data["data"].asJsonObject["metrics"].asJsonArray.map { it.asJsonObject }
+        Assert.assertEquals(listOf(103, 102, 101), metrics.map { it["runId"].asInt })
+        Assert.assertEquals(listOf(3, 2, 1), metrics.map { it["buildNo"].asInt })
+
+        Assert.assertEquals(6, data["trtAvgTholdImpr"].asInt)
+        Assert.assertEquals(12, data["trtAvgTholdMinorRegr"].asInt)
+        Assert.assertEquals(24, data["trtAvgTholdMajorRegr"].asInt)
+        Assert.assertEquals(5, data["trtPctlTholdImpr"].asInt)
+        Assert.assertEquals(10, data["trtPctlTholdMinorRegr"].asInt)
+        Assert.assertEquals(20, data["trtPctlTholdMajorRegr"].asInt)
+        Assert.assertEquals(7, data["testId"].asInt)
+        Assert.assertEquals("fake_load_test", data["testName"].asString)
+    }
+
+    @Test
+    fun benchmarkInsideWindow() {
+        val data = this.reportData(this.trending(101, 1.0, 2.0))
+        Assert.assertEquals(101, data[Constants.BENCHMARK].asInt)
+
+        Assert.assertEquals(1, this.groups(data).size)
+        val rows = this.rows(data)
+        Assert.assertEquals(setOf(101, 102, 103), rows.keys)
+
+        // +50% average: major regression, same percentile
+        Assert.assertEquals(50, rows.getValue(103)["avgTrend"].asInt)
+        Assert.assertTrue(rows.getValue(103)["isAvgMajorRegr"].asBoolean)
+        Assert.assertEquals(0, rows.getValue(103)["ninetiethTrend"].asInt)
+        Assert.assertFalse(rows.getValue(103)["is90thImpr"].asBoolean)
+
+        // +15% average: minor regression, -10% percentile: improvement
+        Assert.assertEquals(15, rows.getValue(102)["avgTrend"].asInt)
+        Assert.assertTrue(rows.getValue(102)["isAvgMinorRegr"].asBoolean)
+        Assert.assertFalse(rows.getValue(102)["isAvgMajorRegr"].asBoolean)
+        Assert.assertEquals(-10, rows.getValue(102)["ninetiethTrend"].asInt)
+        Assert.assertTrue(rows.getValue(102)["is90thImpr"].asBoolean)
+
+        // the benchmark itself
+        Assert.assertEquals(0, rows.getValue(101)["avgTrend"].asInt)
+        Assert.assertFalse(rows.getValue(101)["isAvgImpr"].asBoolean)
+        Assert.assertFalse(rows.getValue(101)["isAvgMinorRegr"].asBoolean)
+    }
+
+    @Test
+    fun benchmarkOutsideWindow() {
+        // an older run, not one of the builds of the report
+        val data = this.reportData(this.trending(90, 2.5, 2.0))
+        Assert.assertEquals(90, data[Constants.BENCHMARK].asInt)
+
+        val rows = this.rows(data)
+        Assert.assertEquals(setOf(101, 102, 103), rows.keys)
+        Assert.assertEquals(-40, rows.getValue(103)["avgTrend"].asInt)
+        Assert.assertEquals(-60, rows.getValue(101)["avgTrend"].asInt)
+        rows.values.forEach { row -> Assert.assertTrue(row["isAvgImpr"].asBoolean) }
+    }
+
+    @Test
+    fun previousRunWithTransactionMissing() {
+        // no benchmark: each run is compared with the previous run having the transaction
+        val latest = this.wrapper(this.trending(103, 1.5, 3.0))
+        val entries = listOf(
+            TrendingIndex.Entry(3, 3000, latest),
+            TrendingIndex.Entry(2, 2000, this.wrapper(this.trending(102, 9.0, 9.0, "logout"))),
+            TrendingIndex.Entry(1, 1000, this.wrapper(this.trending(101, 1.0, 2.0))),
+        )
+        val data = TrendingReport.reportData(entries, latest, this.config)
+        Assert.assertEquals(0, data[Constants.BENCHMARK].asInt)
+
+        val names = this.groups(data).map { it["transactionName"].asString }
+        Assert.assertEquals(listOf("login", "logout"), names.sorted())
+        Assert.assertEquals(setOf(102), this.rows(data, "logout").keys)
+
+        // run 102 has no login, run 103 is compared with run 101
+        val rows = this.rows(data)
+        Assert.assertEquals(setOf(101, 103), rows.keys)
+        Assert.assertEquals(50, rows.getValue(103)["avgTrend"].asInt)
+        Assert.assertEquals(50, rows.getValue(103)["ninetiethTrend"].asInt)
+        Assert.assertTrue(rows.getValue(103)["isAvgMajorRegr"].asBoolean)
+        // the first run is its own benchmark
+        Assert.assertEquals(0, rows.getValue(101)["avgTrend"].asInt)
+    }
+}
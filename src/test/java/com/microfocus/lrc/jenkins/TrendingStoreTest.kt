@@ -0,0 +1,200 @@
+/*
+ * © Copyright 2022 Micro Focus or one of its affiliates.
+ * Licensed under the MIT License (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microfocus.lrc.jenkins
+
+import com.google.gson.Gson
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import com.microfocus.lrc.core.entity.TrendingDataWrapper
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.FileOutputStream
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+class TrendingStoreTest {
+    @get:Rule
+    var folder = TemporaryFolder()
+
+    private fun trending(runId: Int): TrendingDataWrapper {
+        val tx = JsonObject()
+        tx.addProperty("name", "login")
+        tx.addProperty("avg", 1.5)
+        tx.addProperty("nintieth", 2.5)
+        val transactions = JsonArray()
+        transactions.add(tx)
+
+        val json = JsonObject()
+        json.addProperty("runId", runId)
+        json.addProperty("status", "PASSED")
+        json.addProperty("testId", 113)
+        json.add("transactions", transactions)
+        val wrapper = JsonObject()
+        wrapper.add("trendingData", json)
+        wrapper.addProperty("tenantId", "FAKE_TENANT_ID")
+
+        return Gson().fromJson(wrapper, TrendingDataWrapper::class.java)
+    }
+
+    @Test
+    fun appendAndReopen() {
+        val store = TrendingStore(folder.root)
+        store.append(1, 1000, trending(781))
+        store.append(2, 2000, trending(782))
+        // appended once only
+        store.append(2, 2000, trending(783))
+        store.markMigrated()
+
+        val reopened = TrendingStore(folder.root)
+        Assert.assertTrue(reopened.isMigrated())
+        Assert.assertEquals(listOf(2, 1), reopened.records().map { it.buildNo })
+        Assert.assertEquals(2, reopened.latestBuildNo())
+
+        val record = reopened.records()[0]
+        Assert.assertEquals(782, record.runId)
+        Assert.assertEquals(113, record.testId)
+        Assert.assertEquals(1, record.transactions)
+
+        val data = reopened.read(2)!!
+        Assert.assertEquals(782, data.trendingData.runId)
+        Assert.assertEquals(1.5, data.trendingData.transactions[0].avg, 0.0)
+        Assert.assertEquals("FAKE_TENANT_ID", data.tenantId)
+    }
+
+    @Test
+    fun clearMigratedIsPersisted() {
+        val store = TrendingStore(folder.root)
+        store.append(1, 1000, trending(781))
+        store.markMigrated()
+        store.clearMigrated()
+
+        Assert.assertFalse(store.isMigrated())
+        Assert.assertFalse(TrendingStore(folder.root).isMigrated())
+        Assert.assertEquals(listOf(1), TrendingStore(folder.root).records().map { it.buildNo })
+    }
+
+    @Test
+    fun tenantDigest() {
+        val record = TrendingStore(folder.root).apply { append(1, 1000, trending(781)) }.records()[0]
+        Assert.assertEquals(TrendingStore.tenantDigest("FAKE_TENANT_ID"), record.tenantDigest)
+        Assert.assertNotEquals(TrendingStore.tenantDigest("FAKE_TENANT_ID"), TrendingStore.tenantDigest("OTHER"))
+        Assert.assertEquals(0L, TrendingStore.tenantDigest(null))
+    }
+
+    @Test
+    fun removeIsPersisted() {
+        val store = TrendingStore(folder.root)
+        store.append(1, 1000, trending(781))
+        store.append(2, 2000, trending(782))
+        store.remove(2)
+
+        val reopened = TrendingStore(folder.root)
+        Assert.assertEquals(listOf(1), reopened.records().map { it.buildNo })
+        Assert.assertNull(reopened.read(2))
+        Assert.assertFalse(reopened.isMigrated())
+    }
+
+    @Test
+    fun tornRecordIgnored() {
+        val store = TrendingStore(folder.root)
+        store.append(1, 1000, trending(781))
+        FileOutputStream(File(folder.root, TrendingStore.INDEX_FILE), true).use { it.write(ByteArray(7)) }
+
+        val reopened = TrendingStore(folder.root)
+        Assert.assertEquals(listOf(1), reopened.records().map { it.buildNo })
+        reopened.append(2, 2000, trending(782))
+
+        Assert.assertEquals(listOf(2, 1), TrendingStore(folder.root).records().map { it.buildNo })
+    }
+
+    private fun storeWithDeletedBuild(): TrendingStore {
+        val store = TrendingStore(folder.root)
+        store.append(1, 1000, trending(781))
+        store.append(2, 2000, trending(782))
+        store.append(3, 3000, trending(783))
+        store.markMigrated()
+        store.remove(2)
+
+        return store
+    }
+
+    private fun assertCompacted() {
+        val reopened = TrendingStore(folder.root)
+        Assert.assertEquals(listOf(3, 1), reopened.records().map { it.buildNo })
+        Assert.assertEquals(783, reopened.read(3)!!.trendingData.runId)
+        Assert.assertEquals(781, reopened.read(1)!!.trendingData.runId)
+        Assert.assertTrue(reopened.isMigrated())
+        Assert.assertEquals(0L, reopened.deadBytes())
+        Assert.assertEquals(
+            listOf(TrendingStore.DATA_FILE, TrendingStore.INDEX_FILE),
+            folder.root.list()!!.sorted()
+        )
+    }
+
+    @Test
+    fun compact() {
+        val store = this.storeWithDeletedBuild()
+        // too small to be compacted on removal
+        Assert.assertTrue(store.deadBytes() > 0)
+        Assert.assertFalse(store.compactIfWasteful())
+
+        store.compact()
+        Assert.assertEquals(listOf(3, 1), store.records().map { it.buildNo })
+        Assert.assertEquals(783, store.read(3)!!.trendingData.runId)
+        this.assertCompacted()
+
+        // appended after the compacted records
+        store.append(4, 4000, trending(784))
+        Assert.assertEquals(listOf(4, 3, 1), TrendingStore(folder.root).records().map { it.buildNo })
+        Assert.assertEquals(784, TrendingStore(folder.root).read(4)!!.trendingData.runId)
+    }
+
+    @Test
+    fun compactionInterruptedBeforeCommit() {
+        this.storeWithDeletedBuild()
+        // new files partially written
+        File(folder.root, "${TrendingStore.DATA_FILE}.tmp").writeBytes(ByteArray(10))
+        File(folder.root, "${TrendingStore.INDEX_FILE}.tmp").writeBytes(ByteArray(7))
+
+        val reopened = TrendingStore(folder.root)
+        Assert.assertEquals(listOf(3, 1), reopened.records().map { it.buildNo })
+        Assert.assertEquals(783, reopened.read(3)!!.trendingData.runId)
+        Assert.assertTrue(reopened.deadBytes() > 0)
+        Assert.assertEquals(
+            listOf(TrendingStore.DATA_FILE, TrendingStore.INDEX_FILE),
+            folder.root.list()!!.sorted()
+        )
+    }
+
+    @Test
+    fun compactionInterruptedAfterCommit() {
+        this.storeWithDeletedBuild().prepareCompaction()
+        // completed by the next store opened
+        this.assertCompacted()
+    }
+
+    @Test
+    fun compactionInterruptedBetweenRenames() {
+        this.storeWithDeletedBuild().prepareCompaction()
+        Files.move(
+            File(folder.root, "${TrendingStore.DATA_FILE}.tmp").toPath(),
+            File(folder.root, TrendingStore.DATA_FILE).toPath(),
+            StandardCopyOption.REPLACE_EXISTING
+        )
+
+        this.assertCompacted()
+    }
+}